@@ -0,0 +1,196 @@
+package asteroids;
+
+import java.awt.event.KeyEvent;
+import java.lang.management.ManagementFactory;
+import static asteroids.Constants.*;
+
+/**
+ * Checks that a running game stays within its allocation budget.  A game is
+ * played by the same random pilot as Headless uses, first for a number of
+ * warmup ticks that let pools, timer lists and buffers grow to the sizes
+ * they need, and then for a number of measured ticks during which the
+ * bytes allocated by this thread are counted.  New games are started as
+ * old ones end, so the measured ticks take in levels, deaths and game overs
+ * as well as plain flying.
+ * <p>
+ * The game is played twice.  The first time it is stepped headless, as
+ * Headless and Replay run it.  The second time it is run the way the
+ * windowed game runs it, but without a display: the pilot's keys go
+ * through a Simulation's input ring, the Simulation runs each tick, and the
+ * world publishes a frame and records metrics at the end of it.
+ * <p>
+ * The program exits with status 1 if the mean number of bytes allocated
+ * per measured tick is over the budget for either.  The default budget is
+ * a tenth of a byte: pools still grow when a game reaches more asteroids
+ * than any before it, but anything allocated on every tick, however small,
+ * is well over it.  How many participants each pool reused and how many
+ * it created during the measured ticks are reported too, to show that
+ * spawning is reusing them.
+ * <p>
+ * Usage: java asteroids.AllocationBudget [budget] [-warmup n] [-ticks n] [-seed n]
+ * <p>
+ * The HUD and flight recording allocate while they are on, so leave them off.
+ */
+public class AllocationBudget {
+
+	// Default number of warmup and measured ticks
+	private final static int WARMUP = 100000;
+	private final static int TICKS = 100000;
+
+	// Default budget in bytes per tick
+	private final static double BUDGET = 0.1;
+
+	// Default seed.  With some seeds the pilot settles into one endless
+	// game; with this one games keep ending throughout the measured ticks.
+	private final static long SEED = 3;
+
+	// The controls of Controller, and the keys that the windowed game gets
+	// for them
+	private final static int[] CONTROLS = {
+		Controller.LEFT, Controller.RIGHT, Controller.THRUST, Controller.FIRE
+	};
+	private final static int[] KEYS = {
+		KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_SPACE
+	};
+
+	// Names of the participants the pools hold, by type tag
+	private final static String[] POOL_NAMES = { "other", "asteroid", "ship", "bullet" };
+
+	// Where the bytes allocated by this thread are counted
+	private static com.sun.management.ThreadMXBean allocation;
+	private static long thread;
+
+
+	/**
+	 * Runs the check
+	 */
+	public static void main (String[] args) {
+		double budget = BUDGET;
+		long warmup = WARMUP;
+		long ticks = TICKS;
+		long seed = SEED;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-warmup")) {
+				warmup = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-ticks")) {
+				ticks = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			}
+			else {
+				budget = Double.parseDouble(args[i]);
+			}
+		}
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean) ||
+				!((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM can't measure allocation");
+			System.exit(2);
+		}
+		allocation = (com.sun.management.ThreadMXBean) bean;
+		thread = Thread.currentThread().getId();
+
+		boolean within = measure("Controller.step", false, seed, warmup, ticks, budget);
+		System.out.println();
+		within &= measure("Simulation.tick", true, seed, warmup, ticks, budget);
+		if (!within) {
+			System.exit(1);
+		}
+	}
+
+
+	/**
+	 * Plays a game for the warmup and measured ticks, stepping it headless
+	 * or running it through a Simulation as the windowed game does, reports
+	 * how much the measured ticks allocated and returns whether that was
+	 * within the budget
+	 */
+	private static boolean measure (String name, boolean windowed, long seed, long warmup, long ticks, double budget) {
+		World world = new World();
+		final Controller controller = new Controller(world, seed);
+		Simulation simulation = null;
+		if (windowed) {
+			world.setPublishing(true);
+			controller.setMetrics(new TickMetrics());
+			simulation = new Simulation(controller, world, new InputLatency());
+		}
+		Runnable newGame = new Runnable() {
+			@Override
+			public void run () {
+				controller.newGame();
+			}
+		};
+		Pilot pilot = new Pilot(seed + 1);
+		controller.newGame();
+		ParticipantPool<?>[] pools = controller.getPools();
+		long[] hits = new long[pools.length];
+		long[] misses = new long[pools.length];
+
+		int held = 0;
+		long bytes = 0;
+		long allocatingTicks = 0;
+		for (long t = 0; t < warmup + ticks; t++) {
+			if (t == warmup) {
+				for (int p = 0; p < pools.length; p++) {
+					if (pools[p] != null) {
+						hits[p] = pools[p].getHits();
+						misses[p] = pools[p].getMisses();
+					}
+				}
+			}
+			long before = allocation.getThreadAllocatedBytes(thread);
+
+			int inputs = pilot.next();
+			if (simulation == null) {
+				controller.step(inputs);
+			}
+			else {
+				// Press and release keys as the event dispatch thread would
+				for (int c = 0; c < CONTROLS.length; c++) {
+					if (((inputs ^ held) & CONTROLS[c]) != 0) {
+						simulation.keyChanged(KEYS[c], (inputs & CONTROLS[c]) != 0);
+					}
+				}
+				held = inputs;
+				simulation.tick();
+			}
+
+			boolean over = controller.getLives() == 0 && GAME_OVER.equals(world.getLegend());
+			if (over && simulation == null) {
+				controller.newGame();
+			}
+
+			long allocated = allocation.getThreadAllocatedBytes(thread) - before;
+			if (t >= warmup && allocated > 0) {
+				bytes += allocated;
+				allocatingTicks++;
+			}
+
+			// The windowed game's start button queues the new game from the
+			// event dispatch thread, so queuing it isn't counted
+			if (over && simulation != null) {
+				simulation.invokeLater(newGame);
+			}
+		}
+
+		double perTick = (ticks == 0) ? 0 : (double) bytes / ticks;
+		boolean within = perTick <= budget;
+		System.out.println(name);
+		System.out.println("Ticks:                " + ticks);
+		System.out.println("Bytes:                " + bytes);
+		System.out.println("Ticks that allocated: " + allocatingTicks);
+		System.out.println("Bytes/tick:           " + perTick);
+		System.out.println("Budget:               " + budget);
+		for (int p = 0; p < pools.length; p++) {
+			if (pools[p] != null) {
+				System.out.println(String.format("%-22s%d reused, %d new", POOL_NAMES[p] + " pool:",
+					pools[p].getHits() - hits[p], pools[p].getMisses() - misses[p]));
+			}
+		}
+		System.out.println(within ? "Within budget" : "Over budget");
+		return within;
+	}
+}
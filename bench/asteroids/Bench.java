@@ -0,0 +1,387 @@
+package asteroids;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import static asteroids.Constants.*;
+
+/**
+ * Measures the hot paths of the game: moving participants, testing them
+ * for overlap, advancing particles, finding collisions, refreshing the
+ * world and painting the screen (both by stroking outlines and in raster
+ * mode).  Each benchmark is run with 10, 100, 1000 and 10000 participants.
+ * For each, a number of warmup iterations gives the JIT a chance to settle
+ * and then the measured iterations report the mean time per operation with
+ * its standard deviation, and the number of bytes allocated per operation.
+ * <p>
+ * Usage: java asteroids.Bench [name...] [-counts n,n,...] [-iterations n]
+ * <p>
+ * Only the benchmarks whose names contain one of the given names are run.
+ * Run with -Djava.awt.headless=true where there is no display.
+ */
+public class Bench {
+
+	// Participant counts at which every benchmark is run
+	private final static int[] COUNTS = { 10, 100, 1000, 10000 };
+
+	// Number of warmup and measured iterations of each benchmark
+	private final static int WARMUP = 5;
+	private final static int ITERATIONS = 10;
+
+	// Length of each iteration in nanoseconds
+	private final static long ITERATION_NANOS = 200000000L;
+
+	// Combines the results of every run so that none of the work is dead
+	private static long sink;
+
+
+	/**
+	 * Runs the benchmarks
+	 */
+	public static void main (String[] args) {
+		List<String> names = new ArrayList<String>();
+		int[] counts = COUNTS;
+		int iterations = ITERATIONS;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-counts")) {
+				String[] values = args[++i].split(",");
+				counts = new int[values.length];
+				for (int k = 0; k < values.length; k++) {
+					counts[k] = Integer.parseInt(values[k].trim());
+				}
+			}
+			else if (args[i].equals("-iterations")) {
+				iterations = Integer.parseInt(args[++i]);
+			}
+			else {
+				names.add(args[i]);
+			}
+		}
+
+		if (Kinematics.vector() == null) {
+			System.out.println("Vector loops aren't available, so only the scalar loops are measured");
+		}
+		else {
+			System.out.println("Vector loops: " + Kinematics.vector().getName());
+		}
+		System.out.printf("%-20s %7s %14s %12s %12s%n", "Benchmark", "Count", "ns/op", "error", "B/op");
+		for (Benchmark b: benchmarks()) {
+			if (!selected(b.getName(), names)) {
+				continue;
+			}
+			for (int count: counts) {
+				measure(b, count, iterations);
+			}
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+
+	/**
+	 * Reports whether the benchmark was asked for
+	 */
+	private static boolean selected (String name, List<String> names) {
+		if (names.isEmpty()) {
+			return true;
+		}
+		for (String n: names) {
+			if (name.contains(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Runs a benchmark with the given number of participants and prints how
+	 * it did
+	 */
+	private static void measure (Benchmark b, int count, int iterations) {
+		b.setup(count);
+		for (int i = 0; i < WARMUP; i++) {
+			iterate(b, new long[3]);
+		}
+
+		double[] nanosPerOp = new double[iterations];
+		long ops = 0;
+		long bytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			long[] result = new long[3];
+			iterate(b, result);
+			nanosPerOp[i] = (double) result[1] / result[0];
+			ops += result[0];
+			bytes += result[2];
+		}
+		b.tearDown();
+
+		double mean = 0;
+		for (double t: nanosPerOp) {
+			mean += t;
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double t: nanosPerOp) {
+			variance += (t - mean) * (t - mean);
+		}
+		double error = (iterations > 1) ? Math.sqrt(variance / (iterations - 1)) : 0;
+		String allocated = (bytes < 0) ? "n/a" : String.format("%.1f", (double) bytes / ops);
+		System.out.printf("%-20s %7d %14.1f %12.1f %12s%n", b.getName(), count, mean, error, allocated);
+	}
+
+
+	/**
+	 * Runs the benchmark repeatedly for one iteration, recording the number
+	 * of operations, the time they took and the bytes they allocated (or -1
+	 * if allocation can't be measured)
+	 */
+	private static void iterate (Benchmark b, long[] result) {
+		long ops = 0;
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long end;
+		do {
+			sink += b.run();
+			ops++;
+			end = System.nanoTime();
+		} while (end - start < ITERATION_NANOS);
+		long bytesAfter = allocatedBytes();
+		result[0] = ops;
+		result[1] = end - start;
+		result[2] = (bytesBefore < 0) ? -1 : bytesAfter - bytesBefore;
+	}
+
+
+	/**
+	 * Returns the number of bytes allocated so far by this thread, or -1 if
+	 * the JVM can't say
+	 */
+	private static long allocatedBytes () {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Returns every benchmark
+	 */
+	private static List<Benchmark> benchmarks () {
+		List<Benchmark> list = new ArrayList<Benchmark>();
+
+		// Moves every participant once
+		list.add(new Benchmark("move") {
+			private Participant[] ps;
+
+			@Override
+			public void setup (int count) {
+				ps = Scenarios.mixed(count);
+			}
+
+			@Override
+			public long run () {
+				for (Participant p: ps) {
+					p.move();
+				}
+				return (long) ps[0].getX();
+			}
+		});
+
+		// Tests every participant for overlap with a fixed set of others
+		list.add(new Benchmark("overlaps") {
+			private Participant[] ps;
+
+			@Override
+			public void setup (int count) {
+				ps = Scenarios.mixed(count);
+				for (Participant p: ps) {
+					p.move();
+				}
+			}
+
+			@Override
+			public long run () {
+				long hits = 0;
+				for (int i = 0; i < ps.length; i++) {
+					for (int k = 1; k <= 8; k++) {
+						if (ps[i].overlaps(ps[(i + k) % ps.length])) {
+							hits++;
+						}
+					}
+				}
+				return hits;
+			}
+		});
+
+		// Moves every participant in a world once, with the scalar array
+		// loops and then the vector ones
+		list.add(moveAll("moveAll", Kinematics.scalar()));
+		if (Kinematics.vector() != null) {
+			list.add(moveAll("moveAllVector", Kinematics.vector()));
+		}
+
+		// Advances a burst of particles that outlive the benchmark, with the
+		// scalar array loops, the vector ones and then one particle at a time
+		list.add(particles("particles", Kinematics.scalar()));
+		if (Kinematics.vector() != null) {
+			list.add(particles("particlesVector", Kinematics.vector()));
+		}
+		list.add(particles("particlesOneByOne", null));
+
+		// Finds every collision in a world that has stopped moving
+		list.add(new Benchmark("checkForCollisions") {
+			private World world;
+
+			@Override
+			public void setup (int count) {
+				world = Scenarios.world(count);
+			}
+
+			@Override
+			public long run () {
+				world.checkForCollisions();
+				return world.getParticipantCount();
+			}
+		});
+
+		// Advances a world by one tick, splitting the work across processors
+		// when it is big enough and then never splitting it
+		list.add(refresh("refresh", PARALLEL_THRESHOLD));
+		list.add(refresh("refreshSerial", Integer.MAX_VALUE));
+
+		// Paints the screen into an offscreen image, stroking outlines and
+		// then copying pictures of them
+		list.add(paint("paintComponent", false));
+		list.add(paint("paintRaster", true));
+
+		return list;
+	}
+
+
+	/**
+	 * Returns a benchmark that moves every participant in a world with the
+	 * given loops, never splitting the work across processors
+	 */
+	private static Benchmark moveAll (String name, final Kinematics loops) {
+		return new Benchmark(name) {
+			private World world;
+
+			@Override
+			public void setup (int count) {
+				world = Scenarios.world(count);
+				world.setParallelThreshold(Integer.MAX_VALUE);
+				world.setKinematics(loops);
+			}
+
+			@Override
+			public long run () {
+				world.moveParticipants();
+				return world.getParticipantCount();
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a benchmark that advances particles either with the given
+	 * array loops or, if there are none, one at a time
+	 */
+	private static Benchmark particles (String name, final Kinematics loops) {
+		return new Benchmark(name) {
+			private ParticleSystem particles;
+
+			@Override
+			public void setup (int count) {
+				particles = new ParticleSystem();
+				if (loops != null) {
+					particles.setKinematics(loops);
+				}
+				for (int i = 0; i < count; i++) {
+					particles.emit(ParticipantStore.DEBRIS, Debris.getSharedOutline(),
+						i % SIZE, i / 13 % SIZE, 1, i, Integer.MAX_VALUE);
+				}
+			}
+
+			@Override
+			public long run () {
+				if (loops == null) {
+					particles.advanceOneByOne();
+				}
+				else {
+					particles.advance();
+				}
+				return particles.size();
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a benchmark that refreshes a world whose work is done in
+	 * parallel at or above the given number of participants
+	 */
+	private static Benchmark refresh (String name, final int threshold) {
+		return new Benchmark(name) {
+			private World world;
+
+			@Override
+			public void setup (int count) {
+				world = Scenarios.world(count);
+				world.setParallelThreshold(threshold);
+			}
+
+			@Override
+			public long run () {
+				world.refresh();
+				return world.getParticipantCount();
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a benchmark that paints the screen into an offscreen image in
+	 * the given mode
+	 */
+	private static Benchmark paint (String name, final boolean raster) {
+		return new Benchmark(name) {
+			private Screen screen;
+			private BufferedImage image;
+			private Graphics2D g;
+
+			@Override
+			public void setup (int count) {
+				World world = Scenarios.world(0);
+				screen = new Screen(world);
+				screen.stopRendering();
+				screen.setRasterMode(raster);
+				for (Participant p: Scenarios.mixed(count)) {
+					world.addParticipant(p);
+				}
+				world.refresh();
+				world.refresh();
+				screen.setSize(SIZE, SIZE);
+				image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+				g = image.createGraphics();
+			}
+
+			@Override
+			public long run () {
+				screen.takeFrames();
+				screen.paintComponent(g);
+				return image.getRGB(SIZE/2, SIZE/2);
+			}
+
+			@Override
+			public void tearDown () {
+				g.dispose();
+			}
+		};
+	}
+}
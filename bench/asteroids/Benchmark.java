@@ -0,0 +1,48 @@
+package asteroids;
+
+/**
+ * One of the operations measured by Bench.  A benchmark is set up for a
+ * given number of participants and then run over and over; each run is one
+ * operation.  Runs return a value that depends on the work they did so that
+ * the work can't be optimized away.
+ */
+abstract class Benchmark {
+
+	// Name used in reports and for picking benchmarks to run
+	private String name;
+
+
+	/**
+	 * Creates a benchmark with the given name
+	 */
+	protected Benchmark (String name) {
+		this.name = name;
+	}
+
+
+	/**
+	 * Returns the name of the benchmark
+	 */
+	public String getName () {
+		return name;
+	}
+
+
+	/**
+	 * Prepares to run with the given number of participants
+	 */
+	public abstract void setup (int count);
+
+
+	/**
+	 * Performs one operation
+	 */
+	public abstract long run ();
+
+
+	/**
+	 * Releases anything held since setup
+	 */
+	public void tearDown () {
+	}
+}
@@ -0,0 +1,200 @@
+package asteroids;
+
+import java.util.Arrays;
+import java.util.Random;
+import static asteroids.Constants.*;
+
+/**
+ * Checks that the vector loops in Kinematics give exactly the same results
+ * as the plain ones.  Each loop is run both ways on copies of the same
+ * random arrays, over ranges of many lengths and starting points, and every
+ * element that comes out is compared bit for bit.  The values are spread
+ * from well off one side of the screen to well off the other, and include
+ * participants at rest and zeroes of both signs, so that every branch of
+ * every loop is taken.
+ * <p>
+ * Usage: java --add-modules jdk.incubator.vector asteroids.KinematicsCheck [rounds] [-seed n]
+ * <p>
+ * The program exits with status 1 if any element differs, and with status
+ * 2 if the vector loops aren't available.
+ */
+public class KinematicsCheck {
+
+	// Default number of random ranges each loop is checked on
+	private final static int ROUNDS = 2000;
+
+	// Longest array used
+	private final static int LENGTH = 600;
+
+	// Number of differences that are described
+	private final static int SHOWN = 20;
+
+	// Number of differences found so far
+	private static long differences;
+
+
+	/**
+	 * Runs the check
+	 */
+	public static void main (String[] args) {
+		int rounds = ROUNDS;
+		long seed = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			}
+			else {
+				rounds = Integer.parseInt(args[i]);
+			}
+		}
+
+		Kinematics scalar = Kinematics.scalar();
+		Kinematics vector = Kinematics.vector();
+		if (vector == null) {
+			System.out.println("The vector loops aren't available; run with --add-modules jdk.incubator.vector");
+			System.exit(2);
+		}
+		System.out.println("Checking " + vector.getName() + " against " + scalar.getName());
+
+		Random random = new Random(seed);
+		for (int r = 0; r < rounds; r++) {
+			int length = random.nextInt(LENGTH + 1);
+			int start = (length == 0) ? 0 : random.nextInt(length);
+			int end = start + random.nextInt(length - start + 1);
+
+			// countDown
+			int[] ticks = new int[length];
+			for (int i = 0; i < length; i++) {
+				ticks[i] = random.nextInt(100) - 10;
+			}
+			int[] ticksCopy = ticks.clone();
+			scalar.countDown(ticks, start, end);
+			vector.countDown(ticksCopy, start, end);
+			if (!Arrays.equals(ticks, ticksCopy)) {
+				report("countDown", r, -1);
+			}
+
+			// drift
+			double[] pos = positions(random, length);
+			double[] speed = speeds(random, length);
+			double[] drawn = positions(random, length);
+			double[] previous = positions(random, length);
+			double[] low = new double[length];
+			double[] high = new double[length];
+			for (int i = 0; i < length; i++) {
+				low[i] = -random.nextInt(60) - random.nextDouble();
+				high[i] = random.nextInt(60) + random.nextDouble();
+			}
+			double[] pos2 = pos.clone();
+			double[] drawn2 = drawn.clone();
+			double[] previous2 = previous.clone();
+			scalar.drift(pos, speed, drawn, previous, low, high, start, end);
+			vector.drift(pos2, speed, drawn2, previous2, low, high, start, end);
+			compare("drift pos", r, pos, pos2);
+			compare("drift drawn", r, drawn, drawn2);
+			compare("drift previous", r, previous, previous2);
+
+			// advance
+			double[] next = new double[length];
+			double[] next2 = new double[length];
+			scalar.advance(pos, speed, next, start, end);
+			vector.advance(pos, speed, next2, start, end);
+			compare("advance", r, next, next2);
+
+			// wrap
+			double[] min = new double[length];
+			double[] max = new double[length];
+			for (int i = 0; i < length; i++) {
+				min[i] = next[i] + low[i];
+				max[i] = next[i] + high[i];
+			}
+			pos = positions(random, length);
+			pos2 = pos.clone();
+			scalar.wrap(next, min, max, pos, start, end);
+			vector.wrap(next, min, max, pos2, start, end);
+			compare("wrap", r, pos, pos2);
+
+			// friction
+			double[] speedX = speeds(random, length);
+			double[] speedY = speeds(random, length);
+			double[] friction = new double[length];
+			for (int i = 0; i < length; i++) {
+				friction[i] = (random.nextInt(3) == 0) ? 0 : FRICTION * random.nextInt(4);
+			}
+			double[] speedX2 = speedX.clone();
+			double[] speedY2 = speedY.clone();
+			scalar.friction(speedX, speedY, friction, start, end);
+			vector.friction(speedX2, speedY2, friction, start, end);
+			compare("friction x", r, speedX, speedX2);
+			compare("friction y", r, speedY, speedY2);
+		}
+
+		System.out.println("Rounds:      " + rounds);
+		System.out.println("Differences: " + differences);
+		if (differences > 0) {
+			System.exit(1);
+		}
+	}
+
+
+	/**
+	 * Returns random positions from well off one side of the screen to well
+	 * off the other
+	 */
+	private static double[] positions (Random random, int length) {
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = (random.nextDouble() * 1.4 - 0.2) * SIZE;
+		}
+		return values;
+	}
+
+
+	/**
+	 * Returns random speeds, some of them zeroes of either sign and some
+	 * tiny enough for friction to stop
+	 */
+	private static double[] speeds (Random random, int length) {
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++) {
+			switch (random.nextInt(6)) {
+			case 0:
+				values[i] = 0.0;
+				break;
+			case 1:
+				values[i] = -0.0;
+				break;
+			case 2:
+				values[i] = (random.nextDouble() - 0.5) * 0.1;
+				break;
+			default:
+				values[i] = (random.nextDouble() - 0.5) * 2 * SPEED_LIMIT;
+			}
+		}
+		return values;
+	}
+
+
+	/**
+	 * Reports every element of the two arrays whose bits differ
+	 */
+	private static void compare (String loop, int round, double[] expected, double[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			if (Double.doubleToRawLongBits(expected[i]) != Double.doubleToRawLongBits(actual[i])) {
+				report(loop + " (" + expected[i] + " and " + actual[i] + ")", round, i);
+			}
+		}
+	}
+
+
+	/**
+	 * Counts a difference, describing it if not too many have been
+	 */
+	private static void report (String loop, int round, int element) {
+		if (differences < SHOWN) {
+			System.out.println("Differ: " + loop + " in round " + round +
+				((element < 0) ? "" : " at element " + element));
+		}
+		differences++;
+	}
+}
@@ -0,0 +1,194 @@
+package asteroids;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static asteroids.Constants.*;
+
+/**
+ * Checks that Participant.overlaps, which compares the convex pieces of
+ * CollisionShapes, agrees with the constructive area geometry it replaced.
+ * Pairs of participants are generated for every combination of the shapes
+ * that collide (each variety and size of asteroid, the ship and the
+ * bullet), at every one of a number of rotations of each, and at random
+ * offsets out to where their outlines can no longer reach each other.
+ * Each pair is moved into place and tested both ways: with overlaps, and
+ * by intersecting Areas made from the outlines placed where the move put
+ * them, as the game used to.  Pairs generated from the same seed are the
+ * same on every run.
+ * <p>
+ * The program reports how many pairs of each combination of types it
+ * tested and how many of them overlapped, lists the first pairs on which
+ * the two disagree, and exits with status 1 if there were any.
+ * <p>
+ * Usage: java asteroids.NarrowphaseCheck [pairs] [-rotations n] [-seed n]
+ * <p>
+ * pairs is the number of offsets tried for each combination of shapes and
+ * rotations.
+ */
+public class NarrowphaseCheck {
+
+	// Default number of offsets for each combination of shapes and rotations
+	private final static int PAIRS = 8;
+
+	// Default number of rotations of each shape, evenly spaced
+	private final static int ROTATIONS = 16;
+
+	// Number of disagreements that are described
+	private final static int SHOWN = 20;
+
+	// Names of the types of participant, by type tag
+	private final static String[] TYPE_NAMES = { "other", "asteroid", "ship", "bullet" };
+
+
+	/**
+	 * Runs the check
+	 */
+	public static void main (String[] args) {
+		int pairs = PAIRS;
+		int rotations = ROTATIONS;
+		long seed = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-rotations")) {
+				rotations = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			}
+			else {
+				pairs = Integer.parseInt(args[i]);
+			}
+		}
+
+		// One participant of each shape that collides, and another of each
+		// to pair it with
+		List<String> names = new ArrayList<String>();
+		List<Participant> firsts = shapes(names);
+		List<Participant> seconds = shapes(names);
+
+		Random random = new Random(seed);
+		int types = TYPE_NAMES.length;
+		long[][] tested = new long[types][types];
+		long[][] overlapping = new long[types][types];
+		long disagreements = 0;
+
+		for (int i = 0; i < firsts.size(); i++) {
+			for (int j = i; j < seconds.size(); j++) {
+				Participant a = firsts.get(i);
+				Participant b = seconds.get(j);
+				int low = Math.min(a.getType(), b.getType());
+				int high = Math.max(a.getType(), b.getType());
+				double reach = a.getCollisionShape().getOutlineRadius() + b.getCollisionShape().getOutlineRadius();
+
+				for (int ra = 0; ra < rotations; ra++) {
+					for (int rb = 0; rb < rotations; rb++) {
+						for (int k = 0; k < pairs; k++) {
+							double distance = random.nextDouble() * reach;
+							double direction = random.nextDouble() * 2 * Math.PI;
+							place(a, SIZE/2, SIZE/2, ra * 2 * Math.PI / rotations);
+							place(b, SIZE/2 + distance * Math.cos(direction),
+								SIZE/2 + distance * Math.sin(direction), rb * 2 * Math.PI / rotations);
+
+							boolean pieces = a.overlaps(b);
+							boolean areas = intersect(a, b);
+							tested[low][high]++;
+							if (areas) {
+								overlapping[low][high]++;
+							}
+							if (pieces != areas || b.overlaps(a) != pieces) {
+								if (disagreements < SHOWN) {
+									System.out.println("Disagree: " + describe(names.get(i), a) + " and " +
+										describe(names.get(j), b) +
+										": pieces " + pieces + ", areas " + areas);
+								}
+								disagreements++;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		System.out.println("Pairs                  Tested   Overlapping");
+		for (int t = 1; t < types; t++) {
+			for (int u = t; u < types; u++) {
+				System.out.println(String.format("%-18s%11d%14d",
+					TYPE_NAMES[t] + "/" + TYPE_NAMES[u], tested[t][u], overlapping[t][u]));
+			}
+		}
+		System.out.println("Disagreements: " + disagreements);
+		if (disagreements > 0) {
+			System.exit(1);
+		}
+	}
+
+
+	/**
+	 * Returns a participant of every shape that collides: each variety and
+	 * size of asteroid, a ship and a bullet.  The name of each shape is put
+	 * into names, unless it is already full.
+	 */
+	private static List<Participant> shapes (List<String> names) {
+		boolean naming = names.isEmpty();
+		List<Participant> ps = new ArrayList<Participant>();
+		for (int variety = 0; variety < 4; variety++) {
+			for (int size = 0; size < ASTEROID_SCALE.length; size++) {
+				ps.add(new Asteroid(variety, size, 0, 0));
+				if (naming) {
+					names.add("asteroid " + variety + "/" + size);
+				}
+			}
+		}
+		ps.add(new Ship());
+		ps.add(new Bullet());
+		if (naming) {
+			names.add("ship");
+			names.add("bullet");
+		}
+		return ps;
+	}
+
+
+	/**
+	 * Moves the participant to (x,y) with the given rotation, as a tick
+	 * would
+	 */
+	private static void place (Participant p, double x, double y, double rotation) {
+		p.setPosition(x, y);
+		p.setRotation(rotation);
+		p.setVelocity(0, 0);
+		p.move();
+	}
+
+
+	/**
+	 * Reports whether the outlines of the participants, placed where their
+	 * last moves put them, overlap according to constructive area geometry
+	 */
+	private static boolean intersect (Participant a, Participant b) {
+		Area area = new Area(border(a));
+		area.intersect(new Area(border(b)));
+		return !area.isEmpty();
+	}
+
+
+	/**
+	 * Returns the outline of the participant placed where its last move put it
+	 */
+	private static Shape border (Participant p) {
+		AffineTransform transform = AffineTransform.getTranslateInstance(p.getBorderX(), p.getBorderY());
+		transform.concatenate(AffineTransform.getRotateInstance(p.getBorderRotation()));
+		return transform.createTransformedShape(p.getOutline());
+	}
+
+
+	/**
+	 * Describes the shape of a participant of the pair and where it is
+	 */
+	private static String describe (String name, Participant p) {
+		return name + " at (" + p.getBorderX() + ", " + p.getBorderY() + ") rotated " + p.getBorderRotation();
+	}
+}
@@ -0,0 +1,58 @@
+package asteroids;
+
+import java.util.Random;
+import static asteroids.Constants.*;
+
+/**
+ * Builds the populations of participants that the benchmarks work on.
+ * Populations are made from a fixed seed so that every run of a benchmark
+ * sees the same one.
+ */
+class Scenarios {
+
+	// Seed for every population
+	private final static long SEED = 1410;
+
+
+	/**
+	 * Returns count participants spread across the screen: roughly seven
+	 * asteroids of random variety and size for every three bullets, all
+	 * moving in random directions.  Debris is made of particles rather than
+	 * participants, so there is none.
+	 */
+	public static Participant[] mixed (int count) {
+		Random random = new Random(SEED);
+		Participant[] ps = new Participant[count];
+		for (int i = 0; i < count; i++) {
+			int kind = random.nextInt(10);
+			Participant p;
+			if (kind < 7) {
+				p = new Asteroid(random.nextInt(4), random.nextInt(3), 0, 0);
+				p.setVelocity(3 + random.nextInt(4), random.nextDouble()*2*Math.PI);
+			}
+			else {
+				p = new Bullet();
+				p.setVelocity(BULLET_SPEED, random.nextDouble()*2*Math.PI);
+			}
+			p.setPosition(random.nextDouble()*SIZE, random.nextDouble()*SIZE);
+			p.setRotation(random.nextDouble()*2*Math.PI);
+			ps[i] = p;
+		}
+		return ps;
+	}
+
+
+	/**
+	 * Returns a world holding count mixed participants, refreshed once so
+	 * that they are all in place.  Nothing listens for collisions, so the
+	 * population stays the same however often the world is refreshed.
+	 */
+	public static World world (int count) {
+		World world = new World();
+		for (Participant p: mixed(count)) {
+			world.addParticipant(p);
+		}
+		world.refresh();
+		return world;
+	}
+}
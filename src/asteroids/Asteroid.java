@@ -2,6 +2,9 @@ package asteroids;
 
 import java.awt.Shape;
 import java.awt.geom.*;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import static asteroids.Constants.*;
 
 /**
@@ -11,9 +14,16 @@ import static asteroids.Constants.*;
  */
 class Asteroid extends Participant {
 	
+	// The variety of the asteroid (0 to 3), which picks its outline
+	private int variety;
+	
 	// The size of the asteroid (0 = small, 1 = medium, 2 = large)
 	private int size;
 	
+	// The outlines shared by all asteroids, by variety and size.  They
+	// must not be modified.
+	private static final Shape[][] OUTLINES = createOutlines();
+	
 	// The outline of the asteroid
 	private Shape outline;
 	
@@ -23,9 +33,19 @@ class Asteroid extends Participant {
 	 * position it at the provided coordinates.
 	 */
 	public Asteroid (int variety, int size, double x, double y) {
-		this.size = size;
+		reshape(variety, size);
 		setPosition(x, y);
-		outline = createAsteroid(variety, size);
+	}
+	
+	
+	/**
+	 * Changes the variety and size of the asteroid.  This allows pooled
+	 * asteroids to be reused.
+	 */
+	public void reshape (int variety, int size) {
+		this.variety = variety;
+		this.size = size;
+		outline = OUTLINES[variety][size];
 	}
 	
 
@@ -33,10 +53,24 @@ class Asteroid extends Participant {
 		return outline;
 	}
 	
+	/**
+	 * Creates the outlines of every variety and size of asteroid.
+	 */
+	private static Shape[][] createOutlines () {
+		Shape[][] outlines = new Shape[4][ASTEROID_SCALE.length];
+		for (int variety = 0; variety < outlines.length; variety++) {
+			for (int size = 0; size < ASTEROID_SCALE.length; size++) {
+				outlines[variety][size] = createAsteroid(variety, size);
+			}
+		}
+		return outlines;
+	}
+	
+	
 	/**
 	 * Creates the outline of the asteroid based on its variety and size.
 	 */
-	private Shape createAsteroid (int variety, int size) {
+	private static Shape createAsteroid (int variety, int size) {
 		
 		// This will contain the outline
 		Path2D.Double poly = new Path2D.Double();
@@ -102,12 +136,52 @@ class Asteroid extends Participant {
 	}
 	
 	
+	/**
+	 * Identifies this participant as an asteroid
+	 */
+	@Override
+	int getType () {
+		return ParticipantStore.ASTEROID;
+	}
+	
+	
+	/**
+	 * Asteroids collide with ships and bullets, but not with each other
+	 */
+	@Override
+	int getCollisionMask () {
+		return ParticipantStore.layerOf(ParticipantStore.SHIP) | ParticipantStore.layerOf(ParticipantStore.BULLET);
+	}
+	
+	
 	/**
 	 * Returns the size of the asteroid
 	 */
 	public int getSize () {
 		return size;
 	}
+	
+	
+	/**
+	 * Writes the asteroid's variety and size along with the rest of its state
+	 */
+	@Override
+	void writeState (DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeByte(variety);
+		out.writeByte(size);
+	}
+	
+	
+	/**
+	 * Reads the asteroid's variety and size along with the rest of its state
+	 */
+	@Override
+	void readState (ByteBuffer in, ParticipantPool<?> pool) {
+		super.readState(in, pool);
+		int variety = in.get();
+		reshape(variety, in.get());
+	}
 
 	
 }
\ No newline at end of file
@@ -10,23 +10,33 @@ import java.awt.geom.Path2D;
 
 class Bullet extends Participant
 {
+	//the outline shared by every bullet.  It must not be modified.
+	private static final Shape OUTLINE = createBullet();
+	
 	//the outline of the bullet.
 	private Shape outline;
 	
+	/**
+	 * Creates a bullet with the shared outline.
+	 */
+	public Bullet()
+	{
+		outline = OUTLINE;
+	}
+	
 	/**
 	 * Creates the actual shape of the bullet according
 	 * to the specific coordinates.
 	 */
-	public Bullet()
+	private static Shape createBullet()
 	{
-
 		Path2D.Double poly = new Path2D.Double();
 		poly.moveTo(1,0);
 		poly.lineTo(0,1);
 		poly.lineTo(1, 1);
 		poly.lineTo(0, 0);
 		poly.closePath();
-		outline = poly;
+		return poly;
 	}
 	
 	
@@ -35,5 +45,21 @@ class Bullet extends Participant
 		// TODO Auto-generated method stub
 		return outline;
 	}
+	
+	/**
+	 * Identifies this participant as a bullet.
+	 */
+	@Override
+	int getType() {
+		return ParticipantStore.BULLET;
+	}
+	
+	/**
+	 * Bullets only collide with asteroids.
+	 */
+	@Override
+	int getCollisionMask() {
+		return ParticipantStore.layerOf(ParticipantStore.ASTEROID);
+	}
 
 }
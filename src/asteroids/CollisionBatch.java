@@ -0,0 +1,164 @@
+package asteroids;
+
+import java.util.Arrays;
+
+/**
+ * The collisions found during one refresh, handed to collision listeners
+ * all at once after detection is finished.  The batch is reused from one
+ * refresh to the next, so listeners must not hold on to it.
+ * <p>
+ * Listeners step through the collisions with next().  Dealing with one
+ * collision often removes participants, and collisions involving a
+ * participant that has already been removed are then skipped, so that (for
+ * example) a bullet that hits two asteroids at once only destroys one of
+ * them.  Which collisions are skipped follows the order in which pairs are
+ * found, exactly as if each collision had been dealt with as it was found.
+ */
+public class CollisionBatch {
+
+	// Participants that are due to be removed at the next refresh
+	private ParticipantSet removed;
+
+	// The participants in the order in which they were checked, and how many
+	private Participant[] order;
+	private int n;
+
+	// For each collision, the positions in the order of the two participants
+	private int[] firsts, seconds;
+	private int count;
+
+	// The collision that next() last moved to, or -1
+	private int cursor;
+
+	// The last participant in order that has been removed, and the cutoff
+	// below which second participants are skipped for the current first
+	// participant.  See next().
+	private int lastRemoved, cutoff, first;
+
+	// Number of removals pending when the current collision was reached
+	private int removes;
+
+
+	/**
+	 * Creates an empty batch whose skipping is driven by the given set of
+	 * participants awaiting removal
+	 */
+	CollisionBatch (ParticipantSet removed) {
+		this.removed = removed;
+		firsts = new int[16];
+		seconds = new int[16];
+		count = 0;
+		rewind();
+	}
+
+
+	/**
+	 * Empties the batch before a new round of detection over the first n
+	 * participants in order
+	 */
+	void clear (Participant[] order, int n) {
+		this.order = order;
+		this.n = n;
+		count = 0;
+		rewind();
+	}
+
+
+	/**
+	 * Records a collision between the participants at positions i and j of
+	 * the order, where i < j.  Collisions must be added in the order in which
+	 * they were found.
+	 */
+	void add (int i, int j) {
+		if (count == firsts.length) {
+			firsts = Arrays.copyOf(firsts, 2*count);
+			seconds = Arrays.copyOf(seconds, 2*count);
+		}
+		firsts[count] = i;
+		seconds[count] = j;
+		count++;
+	}
+
+
+	/**
+	 * Goes back to before the first collision
+	 */
+	void rewind () {
+		cursor = -1;
+		lastRemoved = -1;
+		cutoff = -1;
+		first = -1;
+		removes = removed.size();
+	}
+
+
+	/**
+	 * Returns the number of collisions found, including any that will be
+	 * skipped
+	 */
+	public int size () {
+		return count;
+	}
+
+
+	/**
+	 * Moves on to the next collision that still matters and reports whether
+	 * there is one.  Pairs were found in increasing order of their first
+	 * participant; once a participant has been removed, pairs whose second
+	 * participant comes no later than it are skipped, as are pairs whose
+	 * first participant has been removed.
+	 */
+	public boolean next () {
+
+		// If dealing with the last collision removed something, work out the
+		// new cutoffs.  That collision's group has already passed everything
+		// after its second participant.
+		if (cursor >= 0 && removed.size() != removes) {
+			removes = removed.size();
+			int i = firsts[cursor];
+			int j = seconds[cursor];
+			for (int r = n-1; r > lastRemoved; r--) {
+				if (removed.contains(order[r])) {
+					lastRemoved = r;
+					break;
+				}
+			}
+			for (int r = j-1; r > Math.max(cutoff, i); r--) {
+				if (removed.contains(order[r])) {
+					cutoff = r;
+					break;
+				}
+			}
+		}
+
+		while (++cursor < count) {
+			int i = firsts[cursor];
+			int j = seconds[cursor];
+			if (i != first) {
+				first = i;
+				cutoff = lastRemoved;
+			}
+			if (j <= cutoff || removed.contains(order[i])) {
+				continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the first participant of the current collision
+	 */
+	public Participant getFirst () {
+		return order[firsts[cursor]];
+	}
+
+
+	/**
+	 * Returns the second participant of the current collision
+	 */
+	public Participant getSecond () {
+		return order[seconds[cursor]];
+	}
+}
@@ -8,8 +8,9 @@ package asteroids;
 public interface CollisionListener {
 	
 	/**
-	 * Reports that the two participants have collided
+	 * Reports all of the collisions found by one refresh of the world.  The
+	 * batch is only valid until this method returns.
 	 */
-	public void collidedWith (Participant p1, Participant p2);
+	public void collisionsDetected (CollisionBatch batch);
 	
 }
@@ -0,0 +1,463 @@
+package asteroids;
+
+import java.awt.Shape;
+import java.awt.geom.*;
+import java.util.*;
+
+/**
+ * The outline of a participant broken down into convex pieces so that
+ * overlaps can be tested without constructive area geometry.  A collision
+ * shape is built once for each outline and can be shared by every
+ * participant that uses that outline.  The pieces are kept in the outline's
+ * own coordinates; participants transform them into screen coordinates
+ * with transform() and then compare them with overlaps().  The points of
+ * the outline itself are also kept, so that it can be placed on the screen
+ * (to find its bounding box, or to draw it) without an AffineTransform.
+ */
+class CollisionShape {
+
+	// Shapes whose pieces are this small (in pixels from the center) are
+	// first tested by checking whether the middles of their pieces lie
+	// inside the other shape
+	private final static double TINY_RADIUS = 2;
+
+	// Collision shapes that have already been built, by outline
+	private final static Map<Shape, CollisionShape> cache = new WeakHashMap<Shape, CollisionShape>();
+
+	// Vertices of the pieces (x followed by y), in the outline's coordinates.
+	// Every piece is a triangle whose vertices run counterclockwise.
+	private final double[] vertices;
+
+	// Number of pieces
+	private final int pieces;
+
+	// Distance from the center (0,0) to the farthest vertex
+	private final double radius;
+
+	// The points (x followed by y) that define the outline itself, including
+	// any control points of curves, in the outline's coordinates
+	private final double[] points;
+
+	// Distance from the center to the farthest point of the outline itself
+	private final double outlineRadius;
+
+	// The type (as given by PathIterator) of each segment of the outline.
+	// Each segment uses the next one, two or three points, or none if it
+	// closes the path.
+	private final byte[] segments;
+
+
+	/**
+	 * Returns the collision shape for the given outline, building it if
+	 * this is the first time the outline has been seen.
+	 */
+	public static synchronized CollisionShape forOutline (Shape outline) {
+		CollisionShape shape = cache.get(outline);
+		if (shape == null) {
+			shape = new CollisionShape(outline);
+			cache.put(outline, shape);
+		}
+		return shape;
+	}
+
+
+	/**
+	 * Breaks the outline into triangles.  The outline is first converted
+	 * into an Area, which untangles self-intersecting outlines and discards
+	 * outlines that enclose nothing, so that what is left is a set of simple
+	 * polygons covering exactly the region that the outline encloses.
+	 */
+	private CollisionShape (Shape outline) {
+		ArrayList<Double> triangles = new ArrayList<Double>();
+		ArrayList<Double> polygon = new ArrayList<Double>();
+		double[] coords = new double[6];
+		double farthest = 0;
+
+		PathIterator iter = new Area(outline).getPathIterator(null, 0.25);
+		while (!iter.isDone()) {
+			int type = iter.currentSegment(coords);
+			if (type == PathIterator.SEG_MOVETO) {
+				triangulate(polygon, triangles);
+				polygon.clear();
+			}
+			if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+				polygon.add(coords[0]);
+				polygon.add(coords[1]);
+				farthest = Math.max(farthest, Math.hypot(coords[0], coords[1]));
+			}
+			iter.next();
+		}
+		triangulate(polygon, triangles);
+
+		vertices = new double[triangles.size()];
+		for (int i = 0; i < vertices.length; i++) {
+			vertices[i] = triangles.get(i);
+		}
+		pieces = vertices.length / 6;
+		radius = farthest;
+
+		ArrayList<Double> outlinePoints = new ArrayList<Double>();
+		ArrayList<Byte> outlineSegments = new ArrayList<Byte>();
+		iter = outline.getPathIterator(null);
+		while (!iter.isDone()) {
+			int type = iter.currentSegment(coords);
+			for (int i = 0; i < 2*pointsIn(type); i++) {
+				outlinePoints.add(coords[i]);
+			}
+			outlineSegments.add((byte) type);
+			iter.next();
+		}
+		points = new double[outlinePoints.size()];
+		double outlineFarthest = 0;
+		for (int i = 0; i < points.length; i++) {
+			points[i] = outlinePoints.get(i);
+			if (i % 2 == 1) {
+				outlineFarthest = Math.max(outlineFarthest, Math.hypot(points[i-1], points[i]));
+			}
+		}
+		outlineRadius = outlineFarthest;
+		segments = new byte[outlineSegments.size()];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = outlineSegments.get(i);
+		}
+	}
+
+
+	/**
+	 * Returns the number of points used by a segment of the given type
+	 */
+	private static int pointsIn (int type) {
+		switch (type) {
+		case PathIterator.SEG_CLOSE:
+			return 0;
+		case PathIterator.SEG_QUADTO:
+			return 2;
+		case PathIterator.SEG_CUBICTO:
+			return 3;
+		default:
+			return 1;
+		}
+	}
+
+
+	/**
+	 * Returns the distance from the center of the outline to its farthest point
+	 */
+	public double getRadius () {
+		return radius;
+	}
+
+
+	/**
+	 * Returns the distance from the center of the outline to the farthest of
+	 * the points that define it.  Unlike getRadius, this counts parts of the
+	 * outline that enclose nothing, such as lone lines.
+	 */
+	public double getOutlineRadius () {
+		return outlineRadius;
+	}
+
+
+	/**
+	 * Returns the size of the array needed to hold the vertices of the
+	 * transformed pieces
+	 */
+	public int getVertexArraySize () {
+		return vertices.length;
+	}
+
+
+	/**
+	 * Returns the size of the array needed to hold the bounding boxes of the
+	 * transformed pieces
+	 */
+	public int getBoxArraySize () {
+		return 4*pieces;
+	}
+
+
+	/**
+	 * Returns the size of the array needed to hold the transformed points of
+	 * the outline
+	 */
+	public int getPointArraySize () {
+		return points.length;
+	}
+
+
+	/**
+	 * Rotates the points of the outline by the angle whose cosine and sine
+	 * are given, then translates them by (x,y).  The results go into world,
+	 * and their bounding box into bounds.  The arithmetic is done in the same
+	 * order as AffineTransform does it, so the box is exactly the one that
+	 * the bounds of the transformed outline would have.
+	 */
+	public void transformOutline (double cos, double sin, double x, double y, double[] world, Rectangle2D.Double bounds) {
+		if (points.length == 0) {
+			bounds.setRect(0, 0, 0, 0);
+			return;
+		}
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int v = 0; v < points.length; v += 2) {
+			double lx = points[v];
+			double ly = points[v+1];
+			double wx = lx*cos - ly*sin + x;
+			double wy = lx*sin + ly*cos + y;
+			world[v] = wx;
+			world[v+1] = wy;
+			minX = Math.min(minX, wx);
+			minY = Math.min(minY, wy);
+			maxX = Math.max(maxX, wx);
+			maxY = Math.max(maxY, wy);
+		}
+		bounds.setRect(minX, minY, maxX - minX, maxY - minY);
+	}
+
+
+	/**
+	 * Appends the outline to the path after rotating it by the angle whose
+	 * cosine and sine are given and translating it by (x,y).  The outline
+	 * starts a new subpath, so many outlines can be gathered into one path
+	 * and drawn together.
+	 */
+	public void appendOutline (Path2D.Double path, double cos, double sin, double x, double y) {
+		int v = 0;
+		for (int s = 0; s < segments.length; s++) {
+			switch (segments[s]) {
+			case PathIterator.SEG_MOVETO:
+				path.moveTo(worldX(v, cos, sin, x), worldY(v, cos, sin, y));
+				break;
+			case PathIterator.SEG_LINETO:
+				path.lineTo(worldX(v, cos, sin, x), worldY(v, cos, sin, y));
+				break;
+			case PathIterator.SEG_QUADTO:
+				path.quadTo(worldX(v, cos, sin, x), worldY(v, cos, sin, y),
+					worldX(v+2, cos, sin, x), worldY(v+2, cos, sin, y));
+				break;
+			case PathIterator.SEG_CUBICTO:
+				path.curveTo(worldX(v, cos, sin, x), worldY(v, cos, sin, y),
+					worldX(v+2, cos, sin, x), worldY(v+2, cos, sin, y),
+					worldX(v+4, cos, sin, x), worldY(v+4, cos, sin, y));
+				break;
+			case PathIterator.SEG_CLOSE:
+				path.closePath();
+				break;
+			}
+			v += 2*pointsIn(segments[s]);
+		}
+	}
+
+
+	/**
+	 * Returns the screen x coordinate of the outline point whose x coordinate
+	 * is at position v of the points array
+	 */
+	private double worldX (int v, double cos, double sin, double x) {
+		return points[v]*cos - points[v+1]*sin + x;
+	}
+
+
+	/**
+	 * Returns the screen y coordinate of the outline point whose x coordinate
+	 * is at position v of the points array
+	 */
+	private double worldY (int v, double cos, double sin, double y) {
+		return points[v]*sin + points[v+1]*cos + y;
+	}
+
+
+	/**
+	 * Rotates the pieces by the angle whose cosine and sine are given, then
+	 * translates them by (x,y), which is the same transformation a participant
+	 * applies to its outline.  The results go into world, and the bounding box
+	 * of each piece (minX, minY, maxX, maxY) into boxes.
+	 */
+	public void transform (double cos, double sin, double x, double y, double[] world, double[] boxes) {
+		for (int v = 0; v < vertices.length; v += 2) {
+			double lx = vertices[v];
+			double ly = vertices[v+1];
+			world[v] = x + cos*lx - sin*ly;
+			world[v+1] = y + sin*lx + cos*ly;
+		}
+		for (int p = 0; p < pieces; p++) {
+			int v = 6*p;
+			boxes[4*p] = Math.min(world[v], Math.min(world[v+2], world[v+4]));
+			boxes[4*p+1] = Math.min(world[v+1], Math.min(world[v+3], world[v+5]));
+			boxes[4*p+2] = Math.max(world[v], Math.max(world[v+2], world[v+4]));
+			boxes[4*p+3] = Math.max(world[v+1], Math.max(world[v+3], world[v+5]));
+		}
+	}
+
+
+	/**
+	 * Reports whether the interiors of two transformed shapes overlap.  Shapes
+	 * that merely touch along an edge or at a point do not overlap.
+	 */
+	public static boolean overlaps (CollisionShape a, double[] aWorld, double[] aBoxes,
+			CollisionShape b, double[] bWorld, double[] bBoxes) {
+
+		// Let the smaller shape drive the search
+		if (b.radius < a.radius) {
+			CollisionShape s = a; a = b; b = s;
+			double[] w = aWorld; aWorld = bWorld; bWorld = w;
+			double[] x = aBoxes; aBoxes = bBoxes; bBoxes = x;
+		}
+		boolean tiny = a.radius <= TINY_RADIUS;
+
+		for (int p = 0; p < a.pieces; p++) {
+			for (int q = 0; q < b.pieces; q++) {
+				if (aBoxes[4*p+2] <= bBoxes[4*q] || bBoxes[4*q+2] <= aBoxes[4*p] ||
+					aBoxes[4*p+3] <= bBoxes[4*q+1] || bBoxes[4*q+3] <= aBoxes[4*p+1]) {
+					continue;
+				}
+				if (tiny && centerInside(aWorld, 6*p, bWorld, 6*q)) {
+					return true;
+				}
+				if (!separated(aWorld, 6*p, bWorld, 6*q) && !separated(bWorld, 6*q, aWorld, 6*p)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Reports whether the middle of the triangle in a (starting at offset i)
+	 * lies strictly inside the triangle in b (starting at offset j).
+	 */
+	private static boolean centerInside (double[] a, int i, double[] b, int j) {
+		double px = (a[i] + a[i+2] + a[i+4]) / 3;
+		double py = (a[i+1] + a[i+3] + a[i+5]) / 3;
+		for (int e = 0; e < 6; e += 2) {
+			int f = (e + 2) % 6;
+			double cross = (b[j+f] - b[j+e]) * (py - b[j+e+1]) - (b[j+f+1] - b[j+e+1]) * (px - b[j+e]);
+			if (cross <= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Reports whether one of the edges of the triangle in a (starting at
+	 * offset i) separates it from the triangle in b (starting at offset j).
+	 * Because the vertices run counterclockwise, the triangle lies to the left
+	 * of each of its edges, so an edge separates the triangles when all of b
+	 * lies on or to the right of it.
+	 */
+	private static boolean separated (double[] a, int i, double[] b, int j) {
+		for (int e = 0; e < 6; e += 2) {
+			int f = (e + 2) % 6;
+			double ex = a[i+f] - a[i+e];
+			double ey = a[i+f+1] - a[i+e+1];
+			boolean allRight = true;
+			for (int v = 0; v < 6 && allRight; v += 2) {
+				double cross = ex * (b[j+v+1] - a[i+e+1]) - ey * (b[j+v] - a[i+e]);
+				allRight = cross <= 0;
+			}
+			if (allRight) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Breaks the simple polygon whose coordinates are in polygon into
+	 * counterclockwise triangles using ear clipping, and appends them to
+	 * triangles.  Polygons that enclose no area contribute nothing.
+	 */
+	private static void triangulate (List<Double> polygon, List<Double> triangles) {
+
+		// Copy out the vertices, dropping a closing vertex that repeats the first
+		int n = polygon.size() / 2;
+		if (n > 1 && polygon.get(0).equals(polygon.get(2*n-2)) && polygon.get(1).equals(polygon.get(2*n-1))) {
+			n--;
+		}
+		if (n < 3) {
+			return;
+		}
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		double area = 0;
+		for (int i = 0; i < n; i++) {
+			xs[i] = polygon.get(2*i);
+			ys[i] = polygon.get(2*i+1);
+		}
+		for (int i = 0; i < n; i++) {
+			int k = (i + 1) % n;
+			area += xs[i]*ys[k] - xs[k]*ys[i];
+		}
+		if (area == 0) {
+			return;
+		}
+
+		// Visit the vertices counterclockwise
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = (area > 0) ? i : n-1-i;
+		}
+
+		// Repeatedly cut off an ear: a convex corner whose triangle contains no
+		// other vertex.  If no ear can be found the rest of the polygon is
+		// degenerate, so it is dropped.
+		int remaining = n;
+		while (remaining >= 3) {
+			boolean clipped = false;
+			for (int i = 0; i < remaining && !clipped; i++) {
+				int a = order[(i + remaining - 1) % remaining];
+				int b = order[i];
+				int c = order[(i + 1) % remaining];
+				double turn = cross(xs, ys, a, b, c);
+				if (turn < 0) {
+					continue;
+				}
+				boolean ear = true;
+				if (turn > 0) {
+					for (int k = 0; k < remaining && ear; k++) {
+						int v = order[k];
+						if (v != a && v != b && v != c && inTriangle(xs, ys, a, b, c, v)) {
+							ear = false;
+						}
+					}
+				}
+				if (ear) {
+					if (turn > 0) {
+						triangles.add(xs[a]); triangles.add(ys[a]);
+						triangles.add(xs[b]); triangles.add(ys[b]);
+						triangles.add(xs[c]); triangles.add(ys[c]);
+					}
+					System.arraycopy(order, i+1, order, i, remaining-i-1);
+					remaining--;
+					clipped = true;
+				}
+			}
+			if (!clipped) {
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns twice the signed area of the triangle abc, which is positive
+	 * when the vertices run counterclockwise.
+	 */
+	private static double cross (double[] xs, double[] ys, int a, int b, int c) {
+		return (xs[b]-xs[a]) * (ys[c]-ys[a]) - (ys[b]-ys[a]) * (xs[c]-xs[a]);
+	}
+
+
+	/**
+	 * Reports whether vertex v lies inside or on the counterclockwise triangle abc
+	 */
+	private static boolean inTriangle (double[] xs, double[] ys, int a, int b, int c, int v) {
+		return cross(xs, ys, a, b, v) >= 0 && cross(xs, ys, b, c, v) >= 0 && cross(xs, ys, c, a, v) >= 0;
+	}
+}
@@ -1,4 +1,7 @@
 package asteroids;
+
+import java.awt.event.KeyEvent;
+
 /**
  * Provides constants governing the game
  * @author Joe Zachary
@@ -25,6 +28,11 @@ public class Constants {
 	 */
 	public final static String START_LABEL = "Start Game";
 	
+	/**
+	 * Label on the checkbox that switches the screen into raster mode
+	 */
+	public final static String RASTER_LABEL = "Sprites";
+	
 	/**
 	 * Speed beyond which participants may not accelerate
 	 */
@@ -42,6 +50,13 @@ public class Constants {
 	 */
 	public final static int FRAME_INTERVAL = 33;
 	
+	/**
+	 * The number of milliseconds between repaints of the screen.  This is
+	 * independent of FRAME_INTERVAL; frames in between refreshes are
+	 * interpolated.
+	 */
+	public final static int RENDER_INTERVAL = 16;
+	
 	/**
 	 * The number of milliseconds between the end of a life and
 	 * the display of the next screen.
@@ -78,4 +93,32 @@ public class Constants {
 	 * Scaling factors used for asteroids of size 0, 1, and 2.
 	 */
 	public final static double[] ASTEROID_SCALE = {0.5, 1.0, 2.0};
+	
+	/**
+	 * Width and height in pixels of the cells in the grid used to find
+	 * participants that might be colliding.  Should evenly divide SIZE.
+	 */
+	public final static int COLLISION_CELL_SIZE = 75;
+	
+	/**
+	 * Number of participants at or above which moving them and testing them
+	 * for collisions is split across processors.
+	 */
+	public final static int PARALLEL_THRESHOLD = 4000;
+	
+	/**
+	 * Fewest participants or pairs that are handed to a processor at once
+	 * when the work is split up.
+	 */
+	public final static int PARALLEL_CHUNK = 1000;
+	
+	/**
+	 * Key that prints how long key events have taken to reach the screen
+	 */
+	public final static int LATENCY_KEY = KeyEvent.VK_L;
+	
+	/**
+	 * Key that shows or hides the tick metrics on the screen
+	 */
+	public final static int HUD_KEY = KeyEvent.VK_H;
 }
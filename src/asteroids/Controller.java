@@ -1,12 +1,11 @@
 package asteroids;
 
+import java.awt.Shape;
 import java.awt.event.*;
-import java.io.File;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Random;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.swing.*;
 import static asteroids.Constants.*;
 
@@ -18,21 +17,71 @@ import static asteroids.Constants.*;
  */
 public class Controller implements CollisionListener, ActionListener, KeyListener, CountdownTimerListener {
 	
-	// Shared random number generator
-	private Random random;
+	/**
+	 * Bits that make up the inputs passed to step: one for each control
+	 * that is being held down.
+	 */
+	public final static int LEFT = 1;
+	public final static int RIGHT = 2;
+	public final static int THRUST = 4;
+	public final static int FIRE = 8;
+	
+	/**
+	 * Deals with a collision between two participants of particular types
+	 */
+	private interface CollisionHandler {
+		void collided (Participant p1, Participant p2);
+	}
+	
+	// Handlers for collisions, indexed by the types of the first and second
+	// participants.  Pairs of types with no handler are ignored.
+	private CollisionHandler[][] collisionHandlers;
+	
+	// The outlines that particles can have, which are written out as their
+	// positions in this array
+	private final static Shape[] PARTICLE_OUTLINES = {
+		Debris.getSharedOutline(), ShipDebris.getSharedOutline(1), ShipDebris.getSharedOutline(2)
+	};
+	
+	// Kinds of timer in a saved state, and the end of the list of timers
+	private final static int COUNTDOWN = 1;
+	private final static int TRANSITION = 2;
+	private final static int NO_MORE_TIMERS = 0;
 	
-	//Part of the debris created when a ship has collided with an asteroid.
-	private ShipDebris shipDebris;
+	// Shared random number generator, and the seed it started with
+	private GameRandom random;
+	private long seed;
+	
+	// Where the game is being recorded, or null
+	private Recorder recorder;
 	
 	// The ship (if one is active) or null (otherwise)
 	private Ship ship;
 	//The Bullets
 	private Bullet bullet;
-	//The debris that appears when things collide.
-	private Debris debris;
 	
-	// When this timer goes off, it is time to refresh the animation
-	private Timer refreshTimer; 
+	// Pools of the participants that come and go during play, so that they
+	// can be reused rather than created over and over
+	private ParticipantPool<Bullet> bulletPool;
+	private ParticipantPool<Asteroid> asteroidPool;
+	private ParticipantPool<Ship> shipPool;
+	
+	// Every timer that has been created.  Those that have gone off are
+	// started again rather than creating new ones.
+	private ArrayList<CountdownTimer> countdownTimers;
+	private ArrayList<TransitionTimer> transitionTimers;
+	
+	// The sound effects, loaded once
+	private SoundBank sounds;
+	
+	// Runs the game at a steady rate on its own thread
+	private Simulation simulation;
+	
+	// Times key events on their way to the screen
+	private InputLatency latency;
+	
+	// Times the phases of each tick and each paint
+	private TickMetrics metrics;
 	
 	// Count of how many transitions have been made.  This is used to keep two
 	// conflicting transitions from being made at almost the same time.
@@ -50,9 +99,11 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	//Keeps track of the score of the game.
 	private int score;
 	
-	// The Game and Screen objects being controlled
+	// The Game and Screen objects being controlled.  When the game is run
+	// without a display, these are null and only the World is used.
 	private Game game;
 	private Screen screen;
+	private World world;
 	
 	//Boolean if the left key is pressed.
 	private boolean leftPressed;
@@ -69,6 +120,9 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	//Keeps track of what level the game is currently on.
 	private int levelCount;
 	
+	//The inputs given to the last call to step.
+	private int inputs;
+	
 	
 	
 	
@@ -77,22 +131,94 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 * Constructs a controller to coordinate the game and screen
 	 */
 	public Controller (Game game, Screen screen) {
+		this(game, screen, screen.getWorld(), System.nanoTime(), new SoundBank());
+		
+		// Record the game if asked to
+		String recording = System.getProperty("asteroids.record");
+		if (recording != null) {
+			try {
+				setRecorder(new Recorder(recording, this));
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run () {
+						recorder.close();
+					}
+				});
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		// Start running the game, timing how long key events take to reach
+		// the screen and how long each part of a tick takes
+		latency = new InputLatency();
+		screen.setInputLatency(latency);
+		metrics = new TickMetrics();
+		setMetrics(metrics);
+		screen.setMetrics(metrics);
+		metrics.register();
+		simulation = new Simulation(this, world, latency);
+		simulation.start();
+	}
+	
+	
+	/**
+	 * Constructs a controller that runs a game in the world with no
+	 * display, no sound and no timers.  The random number generator is
+	 * seeded so that runs can be repeated.  The game advances only when
+	 * step is called, and starts out on the splash screen; call newGame
+	 * to begin playing.
+	 */
+	public Controller (World world, long seed) {
+		this(null, null, world, seed, null);
+	}
+	
+	
+	/**
+	 * Sets up the controller and brings up the splash screen
+	 */
+	private Controller (Game game, Screen screen, World world, long seed, SoundBank sounds) {
 		
 		
 		// Record the game and screen objects
 		this.game = game;
 		this.screen = screen;
+		this.world = world;
 		
-		// Initialize the random number generator
-		random = new Random();
+		// Create the random number generator
+		this.seed = seed;
+		random = new GameRandom(seed);
+		
+		// Record the sound effects
+		this.sounds = sounds;
+		
+		// Create the participant pools
+		bulletPool = new ParticipantPool<Bullet>() {
+			protected Bullet create () {
+				return new Bullet();
+			}
+		};
+		asteroidPool = new ParticipantPool<Asteroid>() {
+			protected Asteroid create () {
+				return new Asteroid(0, 0, 0, 0);
+			}
+		};
+		shipPool = new ParticipantPool<Ship>() {
+			protected Ship create () {
+				return new Ship();
+			}
+		};
+		countdownTimers = new ArrayList<CountdownTimer>();
+		transitionTimers = new ArrayList<TransitionTimer>();
+		
+		// Set up what happens when participants collide
+		createCollisionHandlers();
 		
-		// Set up the refresh timer.
-		refreshTimer = new Timer(FRAME_INTERVAL, this);
 		transitionCount = 0;
 		
-		// Bring up the splash screen and start the refresh timer
+		// Bring up the splash screen
 		splashScreen();
-		refreshTimer.start();
 		
 		//sets up all of the booleans to false and sets the ship speed
 		//to one and level to 0.
@@ -102,6 +228,7 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		shipSpeed = 1;
 		levelCount=0;
 		bulletTrack = new ArrayList<Bullet>();
+		inputs = 0;
 		
 	}
 
@@ -112,8 +239,8 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	private void splashScreen () {
 		
 		// Clear the screen and display the legend
-		screen.clear();
-		screen.setLegend("Asteroids");
+		world.clear();
+		world.setLegend("Asteroids");
 		
 		
 		// Place four asteroids near the corners of the screen.
@@ -125,6 +252,90 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	}
 	
 	
+	/**
+	 * Begins a new game, abandoning any game in progress.
+	 */
+	public void newGame () {
+		if (recorder != null) {
+			recorder.newGame();
+		}
+		transitionCount++;
+		initialScreen();
+	}
+	
+	
+	/**
+	 * Advances a game without a display by one tick.  The inputs are the
+	 * controls (LEFT, RIGHT, THRUST and FIRE) that are being held down.  A
+	 * control that wasn't held down at the previous step counts as pressed,
+	 * and one that no longer is counts as released, just as if the keys had
+	 * been pressed and released.
+	 */
+	public void step (int inputs) {
+		int pressed = inputs & ~this.inputs;
+		int released = this.inputs & ~inputs;
+		this.inputs = inputs;
+		if ((pressed & LEFT) != 0) keyChanged(KeyEvent.VK_LEFT, true);
+		if ((pressed & RIGHT) != 0) keyChanged(KeyEvent.VK_RIGHT, true);
+		if ((pressed & THRUST) != 0) keyChanged(KeyEvent.VK_UP, true);
+		if ((pressed & FIRE) != 0) keyChanged(KeyEvent.VK_SPACE, true);
+		if ((released & LEFT) != 0) keyChanged(KeyEvent.VK_LEFT, false);
+		if ((released & RIGHT) != 0) keyChanged(KeyEvent.VK_RIGHT, false);
+		if ((released & THRUST) != 0) keyChanged(KeyEvent.VK_UP, false);
+		if ((released & FIRE) != 0) keyChanged(KeyEvent.VK_SPACE, false);
+		tick();
+	}
+	
+	
+	/**
+	 * Returns the current score
+	 */
+	public int getScore () {
+		return score;
+	}
+	
+	
+	/**
+	 * Returns the number of lives left
+	 */
+	public int getLives () {
+		return lives;
+	}
+	
+	
+	/**
+	 * Returns the current level, starting from zero
+	 */
+	public int getLevel () {
+		return levelCount;
+	}
+	
+	
+	/**
+	 * Returns the seed that the game's random number generator started with
+	 */
+	public long getSeed () {
+		return seed;
+	}
+	
+	
+	/**
+	 * Records the game from now on.  This must be called before the first
+	 * tick, since a recording is played back from the start.
+	 */
+	public void setRecorder (Recorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	
+	/**
+	 * Returns the world in which the game is played
+	 */
+	public World getWorld () {
+		return world;
+	}
+	
+	
 	/**
 	 * Get the number of transitions that have occurred.
 	 */
@@ -139,9 +350,30 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 * enables the start button to permit playing another game.
 	 */
 	private void finalScreen () {
-		screen.setLegend(GAME_OVER);
-		screen.removeCollisionListener(this);
-		screen.removeKeyListener(this);
+		world.setLegend(GAME_OVER);
+		world.removeCollisionListener(this);
+		listenToKeys(false);
+	}
+	
+	
+	/**
+	 * Starts or stops listening to the screen's key events, if there is a
+	 * screen.  This is called on the simulation thread, so the listener is
+	 * added or removed on the event dispatch thread.
+	 */
+	private void listenToKeys (final boolean listening) {
+		if (screen != null) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (listening) {
+						screen.addKeyListener(Controller.this);
+					}
+					else {
+						screen.removeKeyListener(Controller.this);
+					}
+				}
+			});
+		}
 	}
 	
 	
@@ -152,36 +384,50 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 */
 	private void placeAsteroids () {
 		asteroidCount = 0;
-		Participant a = new Asteroid(0, 2, EDGE_OFFSET, EDGE_OFFSET);
+		Participant a = createAsteroid(0, 2, EDGE_OFFSET, EDGE_OFFSET);
 		a.setVelocity(3+levelCount, random.nextDouble()*2*Math.PI);
 		a.setRotation(2*Math.PI * random.nextDouble());
-		screen.addParticipant(a);
+		world.addParticipant(a);
 		
-		a = new Asteroid(1, 2, SIZE-EDGE_OFFSET, EDGE_OFFSET);
+		a = createAsteroid(1, 2, SIZE-EDGE_OFFSET, EDGE_OFFSET);
 		a.setVelocity(3+levelCount, random.nextDouble()*2*Math.PI);
 		a.setRotation(2*Math.PI * random.nextDouble());
-		screen.addParticipant(a);
+		world.addParticipant(a);
 		
-		a = new Asteroid(2, 2, EDGE_OFFSET, SIZE-EDGE_OFFSET);
+		a = createAsteroid(2, 2, EDGE_OFFSET, SIZE-EDGE_OFFSET);
 		a.setVelocity(3+levelCount, random.nextDouble()*2*Math.PI);
 		a.setRotation(2*Math.PI * random.nextDouble());
-		screen.addParticipant(a);
+		world.addParticipant(a);
 		
-		a = new Asteroid(3, 2, SIZE-EDGE_OFFSET, SIZE-EDGE_OFFSET);
+		a = createAsteroid(3, 2, SIZE-EDGE_OFFSET, SIZE-EDGE_OFFSET);
 		a.setVelocity(3+levelCount, random.nextDouble()*2*Math.PI);
 		a.setRotation(2*Math.PI * random.nextDouble());
-		screen.addParticipant(a);
+		world.addParticipant(a);
 		
 	}
 	
 	
+	/**
+	 * Returns an asteroid of the given variety and size, at the given
+	 * position, taken from the asteroid pool.
+	 */
+	private Asteroid createAsteroid (int variety, int size, double x, double y) {
+		Asteroid a = asteroidPool.acquire();
+		a.reshape(variety, size);
+		a.setPosition(x, y);
+		return a;
+	}
+	
+	
 	/**
 	 * Set things up and begin a new game.
 	 */
 	private void initialScreen () {
 		
-		// Clear the screen
-		screen.clear();
+		// Clear the screen.  Clearing it hands the ship back to its pool,
+		// so forget it first and take a fresh one in placeShip.
+		ship = null;
+		world.clear();
 		
 		// Place four asteroids
 		placeAsteroids();
@@ -194,15 +440,12 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		score = 0;
 		
 		//Sends statistics to be updated on the GUI
-		game.getScore(score);
-		game.getLive(lives);
+		showScore();
+		showLives();
 		
 		// Start listening to events
-		screen.addCollisionListener(this);
-		screen.addKeyListener(this);
-		
-		// Give focus to the game screen
-		screen.requestFocusInWindow();
+		world.addCollisionListener(this);
+		listenToKeys(true);
 		
 		//Clears the ArrayList of all Bullet objects.
 		bulletTrack.clear();
@@ -210,53 +453,103 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	
 
 	
+	/**
+	 * Sends the score to the GUI, if there is one.
+	 */
+	private void showScore () {
+		if (game != null) {
+			game.getScore(score);
+		}
+	}
+	
+	
+	/**
+	 * Sends the number of lives to the GUI, if there is one.
+	 */
+	private void showLives () {
+		if (game != null) {
+			game.getLive(lives);
+		}
+	}
+	
+	
 	/**
 	 * Place a ship in the center of the screen.
 	 */
 	private void placeShip () {
 		if (ship == null) {
-			ship = new Ship();
+			ship = shipPool.acquire();
 		}
 		ship.setPosition(SIZE/2, SIZE/2);
 		ship.setRotation(-Math.PI/2);
 		ship.setVelocity(0, 0);
-		screen.addParticipant(ship);
+		world.addParticipant(ship);
 	}
 
 	
+	/**
+	 * Fills in the table of collision handlers.  Only collisions between
+	 * asteroids and ships, and between asteroids and bullets, matter.  Each
+	 * is handled the same way whichever participant comes first.
+	 */
+	private void createCollisionHandlers () {
+		collisionHandlers = new CollisionHandler[ParticipantStore.TYPE_COUNT][ParticipantStore.TYPE_COUNT];
+		
+		collisionHandlers[ParticipantStore.ASTEROID][ParticipantStore.SHIP] = new CollisionHandler() {
+			public void collided (Participant p1, Participant p2) {
+				asteroidCollision((Asteroid)p1);
+				shipCollision((Ship)p2);
+			}
+		};
+		collisionHandlers[ParticipantStore.SHIP][ParticipantStore.ASTEROID] = new CollisionHandler() {
+			public void collided (Participant p1, Participant p2) {
+				asteroidCollision((Asteroid)p2);
+				shipCollision((Ship)p1);
+			}
+		};
+		collisionHandlers[ParticipantStore.BULLET][ParticipantStore.ASTEROID] = new CollisionHandler() {
+			public void collided (Participant p1, Participant p2) {
+				bulletCollision((Bullet)p1);
+				asteroidCollision((Asteroid)p2);
+			}
+		};
+		collisionHandlers[ParticipantStore.ASTEROID][ParticipantStore.BULLET] = new CollisionHandler() {
+			public void collided (Participant p1, Participant p2) {
+				bulletCollision((Bullet)p2);
+				asteroidCollision((Asteroid)p1);
+			}
+		};
+	}
+	
+	
 	/**
 	 * Deal with collisions between participants.
 	 */
 	@Override
-	public void collidedWith(Participant p1, Participant p2) 
+	public void collisionsDetected (CollisionBatch batch) 
 	{
-		if (p1 instanceof Asteroid && p2 instanceof Ship) {
-			asteroidCollision((Asteroid)p1);
-			shipCollision((Ship)p2);
-		}
-		else if (p1 instanceof Ship && p2 instanceof Asteroid) {
-			asteroidCollision((Asteroid)p2);
-			shipCollision((Ship)p1);
-		}
-		else if(p1 instanceof Bullet && p2 instanceof Asteroid)
-		{	
-			//removes the bullet from the screen.
-			screen.removeParticipant((Bullet)p1);
-			//removes the bullet from the ArrayList.
-			bulletTrack.remove((Bullet)p1);
-			asteroidCollision((Asteroid)p2);
-		}
-		else if(p1 instanceof Asteroid && p2 instanceof Bullet)
-		{
-			//removes the bullet from the screen.
-			screen.removeParticipant((Bullet)p2);
-			//removes the bullet from the ArrayList.
-			bulletTrack.remove((Bullet)p2);
-			asteroidCollision((Asteroid)p1);
+		while (batch.next()) {
+			Participant p1 = batch.getFirst();
+			Participant p2 = batch.getSecond();
+			CollisionHandler handler = collisionHandlers[p1.getType()][p2.getType()];
+			if (handler != null) {
+				handler.collided(p1, p2);
+			}
 		}
 	}
 	
 	
+	/**
+	 * A bullet has hit an asteroid
+	 */
+	private void bulletCollision (Bullet b) {
+		//removes the bullet from the screen.
+		world.removeParticipant(b);
+		//removes the bullet from the ArrayList.
+		bulletTrack.remove(b);
+	}
+	
+	
 	/**
 	 * The ship has collided with something
 	 */
@@ -264,18 +557,18 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		
 		shipDebrisControl(s);
 		// Remove the ship from the screen and null it out
-		screen.removeParticipant(s);
+		world.removeParticipant(s);
 		ship = null;
 		
 		// Display a legend and make it disappear in one second
-		//screen.setLegend("Ouch!");
-		new CountdownTimer(this, null, 1000);
+		//world.setLegend("Ouch!");
+		startCountdown(null, 1000);
 		
 		// Decrement lives
 		lives--;
-		game.getLive(lives);
+		showLives();
 		// Start the timer that will cause the next round to begin.
-		new TransitionTimer(END_DELAY, transitionCount, this);
+		startTransition(END_DELAY);
 		
 		//sets the booleans for controls to false and clears
 		//the ArrayList for bullets.
@@ -294,7 +587,7 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	private void asteroidCollision (Asteroid a) {
 		
 		// The asteroid disappears
-		screen.removeParticipant(a);
+		world.removeParticipant(a);
 		
 		//increments the count by one.
 		asteroidCount++;
@@ -325,8 +618,19 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		//plays the sound for asteroid collision.
 		asteroidAudio(size);
 		
+		//reports the breakup to the flight recorder.
+		if (GameEvents.BREAKUP.isEnabled()) {
+			GameEvents.Breakup event = new GameEvents.Breakup();
+			event.size = size;
+			event.fragments = (size > 0) ? 2 : 0;
+			event.destroyed = asteroidCount;
+			event.participants = world.getParticipantCount();
+			event.particles = world.getParticles().size();
+			event.commit();
+		}
+		
 		//sends the GUI an update of the score.
-		game.getScore(score);
+		showScore();
 		
 		// Create two smaller asteroids.  Put them at the same position
 		// as the one that was just destroyed and give them a random
@@ -335,14 +639,14 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		size = size - 1;
 		if (size >= 0) {
 			int speed = 5 - size;
-			Asteroid a1 = new Asteroid(random.nextInt(4), size, a.getX(), a.getY());
-			Asteroid a2 = new Asteroid(random.nextInt(4), size, a.getX(), a.getY());
+			Asteroid a1 = createAsteroid(random.nextInt(4), size, a.getX(), a.getY());
+			Asteroid a2 = createAsteroid(random.nextInt(4), size, a.getX(), a.getY());
 			a1.setVelocity(speed+levelCount, random.nextDouble()*2*Math.PI);
 			a2.setVelocity(speed+levelCount, random.nextDouble()*2*Math.PI);
 			a1.setRotation(2*Math.PI*random.nextDouble());
 			a2.setRotation(2*Math.PI*random.nextDouble());
-			screen.addParticipant(a1);
-			screen.addParticipant(a2);
+			world.addParticipant(a1);
+			world.addParticipant(a2);
 			
 		
 		}
@@ -352,12 +656,13 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		//placed and level and transitioncount will increment by one.
 		if(asteroidCount == 28)
 		{
-			screen.removeParticipant(ship);
-			new TransitionTimer(5000, transitionCount, this);
+			world.removeParticipant(ship);
+			startTransition(5000);
 			placeShip();
 			placeAsteroids();
 			transitionCount++;
 			levelCount++;
+			recordTransition("nextLevel");
 		}
 	}
 	
@@ -368,46 +673,21 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 */
 	private void asteroidDebris(Asteroid a)
 	{
-		//Creates new Debris Ojbects.
-		debris = new Debris();
-		Debris d2 = new Debris();
-		Debris d3 = new Debris();
-		Debris d4 = new Debris();
-		Debris d5 = new Debris();
-		Debris d6 = new Debris();
-		
-		//Sets the position of each Debris Object.
-		debris.setPosition(a.getX(), a.getY());
-		d2.setPosition(a.getX(), a.getY());
-		d3.setPosition(a.getX()+1, a.getY());
-		d4.setPosition(a.getX()+2, a.getY());
-		d5.setPosition(a.getX(), a.getY());
-		d6.setPosition(a.getX(), a.getY());
-		
-		//Sets the velocity of each Debris Object.
-		debris.setVelocity(1, -Math.PI/2);
-		d2.setVelocity(1, Math.PI/2);
-		d3.setVelocity(1, 0);
-		d4.setVelocity(1, Math.PI);
-		d5.setVelocity(1, Math.PI/4);
-		d6.setVelocity(1, Math.PI/6);
-		
-		//Adds each Debris Object to the screen.
-		screen.addParticipant(debris);
-		screen.addParticipant(d2);
-		screen.addParticipant(d3);
-		screen.addParticipant(d4);
-		screen.addParticipant(d5);
-		screen.addParticipant(d6);
-		
-		//Creates a countdown timer for each Debris
-		//Object.
-		new CountdownTimer(this,debris,1000);
-		new CountdownTimer(this,d2,1000);
-		new CountdownTimer(this,d3,1000);
-		new CountdownTimer(this,d4,1000);
-		new CountdownTimer(this,d5,1000);	
-		new CountdownTimer(this,d6,1000);
+		//Debris is made of particles, which never collide
+		//and disappear by themselves after a second.
+		ParticleSystem particles = world.getParticles();
+		Shape outline = Debris.getSharedOutline();
+		int ticks = TimingWheel.ticksFor(1000);
+		double x = a.getX();
+		double y = a.getY();
+		
+		//Scatters the debris in different directions.
+		particles.emit(ParticipantStore.DEBRIS, outline, x, y, 1, -Math.PI/2, ticks);
+		particles.emit(ParticipantStore.DEBRIS, outline, x, y, 1, Math.PI/2, ticks);
+		particles.emit(ParticipantStore.DEBRIS, outline, x+1, y, 1, 0, ticks);
+		particles.emit(ParticipantStore.DEBRIS, outline, x+2, y, 1, Math.PI, ticks);
+		particles.emit(ParticipantStore.DEBRIS, outline, x, y, 1, Math.PI/4, ticks);
+		particles.emit(ParticipantStore.DEBRIS, outline, x, y, 1, Math.PI/6, ticks);
 	}
 	
 	/**
@@ -417,30 +697,18 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 */
 	private void shipDebrisControl(Ship s)
 	{
-		//Creates new shipDebris Objects.
-		shipDebris = new ShipDebris(1);
-		ShipDebris shipDebris2 = new ShipDebris(1);
-		ShipDebris shipDebris3 = new ShipDebris(2);
-		
-		//Sets the positions of each Object.
-		shipDebris.setPosition(s.getXNose(), s.getYNose());
-		shipDebris2.setPosition(s.getXNose(), s.getYNose());
-		shipDebris3.setPosition(s.getXNose(), s.getYNose());
-		
-		//Sets the velocity of each Object.
-		shipDebris.setVelocity(1, 0);
-		shipDebris2.setVelocity(2, Math.PI/16);
-		shipDebris3.setVelocity(1, Math.PI/2);
+		//The pieces of the ship are particles that start
+		//at its nose and disappear by themselves.
+		ParticleSystem particles = world.getParticles();
+		double x = s.getXNose();
+		double y = s.getYNose();
 		
-		//adds each debris object to the screen.
-		screen.addParticipant(shipDebris);
-		screen.addParticipant(shipDebris2);
-		screen.addParticipant(shipDebris3);
-		
-		//creates a countdowntimer for each object.
-		new CountdownTimer(this,shipDebris,1500);
-		new CountdownTimer(this,shipDebris2,1600);
-		new CountdownTimer(this,shipDebris3,1700);
+		particles.emit(ParticipantStore.SHIP_DEBRIS, ShipDebris.getSharedOutline(1),
+				x, y, 1, 0, TimingWheel.ticksFor(1500));
+		particles.emit(ParticipantStore.SHIP_DEBRIS, ShipDebris.getSharedOutline(1),
+				x, y, 2, Math.PI/16, TimingWheel.ticksFor(1600));
+		particles.emit(ParticipantStore.SHIP_DEBRIS, ShipDebris.getSharedOutline(2),
+				x, y, 1, Math.PI/2, TimingWheel.ticksFor(1700));
 	}
 	
 	/**
@@ -449,47 +717,58 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 */
 	private void removeBullet(Bullet a)
 	{
-		new CountdownTimer(this, a, BULLET_DURATION);
+		startCountdown(a, BULLET_DURATION);
 		
 	}
 	
+	/**
+	 * Starts a countdown timer for the participant (which may be null),
+	 * reusing one that has gone off if there is one.
+	 */
+	private void startCountdown (Participant p, int msecs) {
+		for (int i = 0; i < countdownTimers.size(); i++) {
+			CountdownTimer t = countdownTimers.get(i);
+			if (!t.isScheduled()) {
+				t.restart(p, msecs);
+				return;
+			}
+		}
+		countdownTimers.add(new CountdownTimer(world, this, p, msecs));
+	}
+	
+	/**
+	 * Starts a transition timer for the current transition count, reusing
+	 * one that has gone off if there is one.
+	 */
+	private void startTransition (int msecs) {
+		for (int i = 0; i < transitionTimers.size(); i++) {
+			TransitionTimer t = transitionTimers.get(i);
+			if (!t.isScheduled()) {
+				t.restart(msecs, transitionCount);
+				return;
+			}
+		}
+		transitionTimers.add(new TransitionTimer(world, msecs, transitionCount, this));
+	}
+	
 	/**
 	 * Creates the audio when a bullet is fired.
 	 */
 	private void bulletAudio()
 	{
-		if(ship==null)
+		if(ship==null || sounds==null)
 		{
 			return;
 		}
-		try{
-			File bulletaf = new File("fire.wav");
-		     AudioInputStream astream = AudioSystem.getAudioInputStream(bulletaf);
-			Clip audio = AudioSystem.getClip();
-				audio.open(astream);
-				audio.setFramePosition(0);
-				audio.start();
-				
-		}
-		catch(Exception audio)
-		{
-			
-		}
+		sounds.play(SoundBank.FIRE);
 	}
 	
 	/**
 	 * Creates the audio for the ship.
 	 */
 	private void thrusterAudio() {
-		try {
-			File thrusteraf = new File("thrust.wav");
-			AudioInputStream astream = AudioSystem.getAudioInputStream(thrusteraf);
-			Clip audio = AudioSystem.getClip();
-			audio.open(astream);
-			audio.setFramePosition(0);
-			audio.start();
-		} catch (Exception audio) {
-
+		if (sounds != null) {
+			sounds.play(SoundBank.THRUST);
 		}
 	}
 	
@@ -499,46 +778,29 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 */
 	private void asteroidAudio(int a)
 	{
-		//Each Asteroid size has it's own sound.
-		try 
+		if(sounds==null)
 		{
+			return;
+		}
+		
+		//Each Asteroid size has it's own sound.
 		if(a==0)
 		{
-			File thrusteraf = new File("bangsmall.wav");
-			AudioInputStream astream = AudioSystem.getAudioInputStream(thrusteraf);
-			Clip audio = AudioSystem.getClip();
-			audio.open(astream);
-			audio.setFramePosition(0);
-			audio.start();
+			sounds.play(SoundBank.BANG_SMALL);
 		} 
 		if(a==1)
 		{
-			File thrusteraf = new File("bangmedium.wav");
-			AudioInputStream astream = AudioSystem.getAudioInputStream(thrusteraf);
-			Clip audio = AudioSystem.getClip();
-			audio.open(astream);
-			audio.setFramePosition(0);
-			audio.start();
+			sounds.play(SoundBank.BANG_MEDIUM);
 		}
 		if(a==2)
 		{
-			File thrusteraf = new File("banglarge.wav");
-			AudioInputStream astream = AudioSystem.getAudioInputStream(thrusteraf);
-			Clip audio = AudioSystem.getClip();
-			audio.open(astream);
-			audio.setFramePosition(0);
-			audio.start();
-		}
-		}
-		catch (Exception audio) 
-		{
-
+			sounds.play(SoundBank.BANG_LARGE);
 		}
 	}
 
 	
 	/**
-	 * This method will be invoked because of button presses and timer events.
+	 * This method will be invoked because of button presses.
 	 */
 	@Override
 	public void actionPerformed(ActionEvent e) {
@@ -546,63 +808,261 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 		// The start button has been pressed.  Stop whatever we're doing
 		// and bring up the initial screen
 		if (e.getSource() instanceof JButton) {
-			transitionCount++;
-			initialScreen();	
+			
+			// Give focus to the game screen
+			screen.requestFocusInWindow();
+			
+			simulation.invokeLater(new Runnable() {
+				@Override
+				public void run () {
+					newGame();
+				}
+			});
 		}
-		
-		
-		// Time to refresh the screen
-		else if (e.getSource() == refreshTimer) {
-			try { // this controls the key events as long as ship is not null.
-				if (ship != null) {
-					
-					// if the right is pressed, the ship turns right.
-					if (rightPressed == true) {
-						shipAccel = false;
-						ship.rotate(Math.PI / 16);
-						
-					}
+	}
+	
+	
+	/**
+	 * Advances the game by one tick.  This is called by the simulation
+	 * thread, or by step when there is no display.
+	 */
+	void tick () {
+		try { // this controls the key events as long as ship is not null.
+			if (ship != null) {
+				
+				// if the right is pressed, the ship turns right.
+				if (rightPressed == true) {
+					shipAccel = false;
+					ship.rotate(Math.PI / 16);
 					
-					// if the left key is pressed, the ship turns left.
-					if (leftPressed == true) {
-						shipAccel = false;
-						ship.rotate(-Math.PI / 16);
-						
-					}
+				}
+				
+				// if the left key is pressed, the ship turns left.
+				if (leftPressed == true) {
+					shipAccel = false;
+					ship.rotate(-Math.PI / 16);
 					
-					// if the up key is pressed, the ship accelerates in the
-					// direction
-					// it is pointing.
-					if (shipAccel == true) {
+				}
+				
+				// if the up key is pressed, the ship accelerates in the
+				// direction
+				// it is pointing.
+				if (shipAccel == true) {
 
-						ship.setVelocity(0, ship.getRotation());
+					ship.setVelocity(0, ship.getRotation());
 
-						if (shipSpeed < SPEED_LIMIT) {
-							ship.accelerate(shipSpeed += 0.5);
+					if (shipSpeed < SPEED_LIMIT) {
+						ship.accelerate(shipSpeed += 0.5);
 
-						} else {
-							ship.setVelocity(SPEED_LIMIT, ship.getRotation());
-							ship.accelerate(SPEED_LIMIT);
-							
-						}
+					} else {
+						ship.setVelocity(SPEED_LIMIT, ship.getRotation());
+						ship.accelerate(SPEED_LIMIT);
+						
 					}
-					
-					if(shipAccel==false)
+				}
+				
+				if(shipAccel==false)
+				{
+					if(shipSpeed > 0)
 					{
-						if(shipSpeed > 0)
-						{
-							shipSpeed-=0.5;
-						}
+						shipSpeed-=0.5;
 					}
-
 				}
-			} catch (Exception except) {
 
 			}
-			
-			// Refresh screen
-			screen.refresh();
+		} catch (Exception except) {
+
+		}
+		
+		// Refresh screen
+		world.refresh();
+		
+		// Record how often the pools have reused participants
+		if (metrics != null) {
+			metrics.recordPool(ParticipantStore.ASTEROID, asteroidPool.getHits(), asteroidPool.getMisses());
+			metrics.recordPool(ParticipantStore.SHIP, shipPool.getHits(), shipPool.getMisses());
+			metrics.recordPool(ParticipantStore.BULLET, bulletPool.getHits(), bulletPool.getMisses());
+		}
+		
+		if (recorder != null) {
+			recorder.tick();
+		}
+	}
+	
+	
+	/**
+	 * Writes everything that the game depends on, so that readState can
+	 * carry on from the same point.  This must be called between ticks.
+	 */
+	void writeState (DataOutput out) throws IOException {
+		
+		// Number every participant that anything refers to and write them
+		ParticipantPool<?>[] pools = getPools();
+		TimingWheel wheel = world.getTimingWheel();
+		ParticipantTable table = new ParticipantTable();
+		world.addParticipantsTo(table);
+		table.add(ship);
+		for (int i = 0; i < bulletTrack.size(); i++) {
+			table.add(bulletTrack.get(i));
+		}
+		for (int b = 0; b < wheel.getBucketCount(); b++) {
+			for (TimingWheel.Timeout t = wheel.getFirst(b); t != null; t = t.getNext()) {
+				if (t instanceof CountdownTimer) {
+					table.add(((CountdownTimer) t).getParticipant());
+				}
+			}
+		}
+		for (int type = 0; type < pools.length; type++) {
+			for (int i = 0; pools[type] != null && i < pools[type].getFreeCount(); i++) {
+				table.add(pools[type].getFree(i));
+			}
+		}
+		table.write(out);
+		
+		// The controller's own state
+		out.writeLong(random.getState());
+		out.writeInt(transitionCount);
+		out.writeInt(asteroidCount);
+		out.writeInt(lives);
+		out.writeInt(score);
+		out.writeInt(levelCount);
+		out.writeBoolean(leftPressed);
+		out.writeBoolean(rightPressed);
+		out.writeBoolean(shipAccel);
+		out.writeDouble(shipSpeed);
+		out.writeBoolean(world.hasCollisionListener(this));
+		out.writeInt(table.idOf(ship));
+		out.writeInt(bulletTrack.size());
+		for (int i = 0; i < bulletTrack.size(); i++) {
+			out.writeInt(table.idOf(bulletTrack.get(i)));
+		}
+		
+		// The world, and then what is waiting in the pools
+		world.writeState(out, table, PARTICLE_OUTLINES);
+		for (int type = 0; type < pools.length; type++) {
+			if (pools[type] != null) {
+				out.writeInt(pools[type].getFreeCount());
+				for (int i = 0; i < pools[type].getFreeCount(); i++) {
+					out.writeInt(table.idOf(pools[type].getFree(i)));
+				}
+			}
+		}
+		
+		// The timers, bucket by bucket in index order and in order within each
+		// bucket.  This is not the order in which they go off: a timer's
+		// bucket is its deadline masked to the number of buckets, so one due
+		// at tick 300 (bucket 44) comes before one due at tick 250 (bucket
+		// 250).  readState reschedules them in this order, which puts each
+		// bucket back in the same order, and timers due on the same tick
+		// go off in that order.  Don't sort them by deadline.
+		for (int b = 0; b < wheel.getBucketCount(); b++) {
+			for (TimingWheel.Timeout t = wheel.getFirst(b); t != null; t = t.getNext()) {
+				if (t instanceof CountdownTimer) {
+					CountdownTimer c = (CountdownTimer) t;
+					out.writeByte(COUNTDOWN);
+					out.writeLong(c.getDeadline());
+					out.writeInt(table.idOf(c.getParticipant()));
+					out.writeInt(c.getIncarnation());
+				}
+				else {
+					out.writeByte(TRANSITION);
+					out.writeLong(t.getDeadline());
+					out.writeInt(((TransitionTimer) t).getTransitionCount());
+				}
+			}
+		}
+		out.writeByte(NO_MORE_TIMERS);
+	}
+	
+	
+	/**
+	 * Replaces the state of the game with what writeState wrote.  Play then
+	 * carries on exactly as it did after the state was written.
+	 */
+	void readState (ByteBuffer in) {
+		ParticipantPool<?>[] pools = getPools();
+		ParticipantTable table = new ParticipantTable();
+		table.read(in, pools);
+		
+		random.setState(in.getLong());
+		transitionCount = in.getInt();
+		asteroidCount = in.getInt();
+		lives = in.getInt();
+		score = in.getInt();
+		levelCount = in.getInt();
+		leftPressed = in.get() != 0;
+		rightPressed = in.get() != 0;
+		shipAccel = in.get() != 0;
+		shipSpeed = in.getDouble();
+		world.removeCollisionListener(this);
+		if (in.get() != 0) {
+			world.addCollisionListener(this);
+		}
+		ship = (Ship) table.get(in.getInt());
+		bullet = null;
+		bulletTrack.clear();
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			bulletTrack.add((Bullet) table.get(in.getInt()));
+		}
+		
+		world.readState(in, table, PARTICLE_OUTLINES);
+		for (int type = 0; type < pools.length; type++) {
+			if (pools[type] != null) {
+				pools[type].clearFree();
+				count = in.getInt();
+				for (int i = 0; i < count; i++) {
+					pools[type].release(table.get(in.getInt()));
+				}
+			}
+		}
+		
+		// Reschedule the timers in the order writeState wrote them, which
+		// rebuilds every bucket of the timing wheel in its old order
+		countdownTimers.clear();
+		transitionTimers.clear();
+		int kind;
+		while ((kind = in.get()) != NO_MORE_TIMERS) {
+			long deadline = in.getLong();
+			if (kind == COUNTDOWN) {
+				CountdownTimer t = new CountdownTimer(world, this);
+				Participant p = table.get(in.getInt());
+				t.restore(p, in.getInt(), deadline);
+				countdownTimers.add(t);
+			}
+			else {
+				TransitionTimer t = new TransitionTimer(world, this);
+				t.restore(in.getInt(), deadline);
+				transitionTimers.add(t);
+			}
 		}
+		
+		showScore();
+		showLives();
+	}
+	
+	
+	/**
+	 * Returns the participant pools, indexed by the type of participant
+	 * they hold
+	 */
+	ParticipantPool<?>[] getPools () {
+		ParticipantPool<?>[] pools = new ParticipantPool<?>[ParticipantStore.TYPE_COUNT];
+		pools[ParticipantStore.SHIP] = shipPool;
+		pools[ParticipantStore.BULLET] = bulletPool;
+		pools[ParticipantStore.ASTEROID] = asteroidPool;
+		return pools;
+	}
+	
+	
+	/**
+	 * Sets where the world records how long each part of a tick takes and
+	 * what it found, and where the pools' reuse is recorded after each
+	 * tick.  Passing null stops recording.
+	 */
+	void setMetrics (TickMetrics metrics) {
+		this.metrics = metrics;
+		world.setMetrics(metrics);
 	}
 	
 	
@@ -628,25 +1088,75 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 			shipSpeed=0;
 		}
 		
+		recordTransition((lives == 0) ? "gameOver" : "newShip");
+	}
+	
+	
+	/**
+	 * Reports a transition of the given kind to the flight recorder
+	 */
+	private void recordTransition (String kind) {
+		if (GameEvents.TRANSITION.isEnabled()) {
+			GameEvents.Transition event = new GameEvents.Transition();
+			event.kind = kind;
+			event.level = levelCount;
+			event.lives = lives;
+			event.score = score;
+			event.participants = world.getParticipantCount();
+			event.commit();
+		}
 	}
 
 
 	/**
-	 * Deals with certain key presses
+	 * Deals with certain key presses by passing them on to the
+	 * simulation thread.  LATENCY_KEY prints the input latencies instead,
+	 * and HUD_KEY shows or hides the metrics.
 	 */
 	@Override
 	public void keyPressed(KeyEvent e) {
-		if (e.getKeyCode() == KeyEvent.VK_LEFT) { 
+		if (e.getKeyCode() == LATENCY_KEY) {
+			latency.print(System.out);
+			return;
+		}
+		if (e.getKeyCode() == HUD_KEY) {
+			screen.toggleHud();
+			return;
+		}
+		simulation.keyChanged(e.getKeyCode(), true);
+	}
+	
+	/**
+	 * Deals with a key going down or up.  This is called by the simulation
+	 * thread at the start of a tick.
+	 */
+	void keyChanged(int code, boolean down) {
+		if (recorder != null) {
+			recorder.keyChanged(code, down);
+		}
+		if (down) {
+			keyDown(code);
+		}
+		else {
+			keyUp(code);
+		}
+	}
+	
+	/**
+	 * Deals with a key press on the simulation thread
+	 */
+	private void keyDown(int code) {
+		if (code == KeyEvent.VK_LEFT) { 
 			if (ship != null) 
 			leftPressed = true; //sets the boolean to true.
 			
 		}
-		else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+		else if (code == KeyEvent.VK_RIGHT) {
 			if (ship != null) 
 			rightPressed = true;	//set the boolean to true.
 			
 		}
-		else if(e.getKeyCode() == KeyEvent.VK_UP)
+		else if(code == KeyEvent.VK_UP)
 		{
 			if(ship!=null)
 			{	
@@ -660,7 +1170,7 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 			
 			
 		}
-		else if(e.getKeyCode() == KeyEvent.VK_SPACE)
+		else if(code == KeyEvent.VK_SPACE)
 		{
 		
 					if(ship!=null)
@@ -670,8 +1180,8 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 						//another one is created when this is called.
 						if(bulletTrack.size()<8)
 					{
-					//creates a new bullet object.
-					bullet = new Bullet();
+					//takes a bullet object from the pool.
+					bullet = bulletPool.acquire();
 					
 					//creates the audio for each bullet object.
 					bulletAudio();
@@ -686,7 +1196,7 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 					bullet.setVelocity(BULLET_SPEED, ship.getRotation());
 					
 					//adds the bullet to the screen.
-					screen.addParticipant(bullet);
+					world.addParticipant(bullet);
 					
 					//adds the bullet object to the ArrayList.
 					bulletTrack.add(bullet);
@@ -701,39 +1211,43 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	}
 
 	/**
-	 * Deals with certain items when the key is released.
+	 * Deals with certain items when the key is released by
+	 * passing them on to the simulation thread.
 	 */
 	@Override
 	public void keyReleased(KeyEvent e) 
 	{
-		try
-		{
-		if(e.getKeyCode() == KeyEvent.VK_LEFT);
-		{
-			//when the left key is released, the boolean is set to false.
-			leftPressed = false;
-			ship.friction();
+		simulation.keyChanged(e.getKeyCode(), false);
+	}
+	
+	/**
+	 * Deals with a key release on the simulation thread
+	 */
+	private void keyUp(int code)
+	{
+		//releasing any key counts as releasing the left key,
+		//and slows the ship down.
+		leftPressed = false;
+		
+		//without a ship there is nothing to slow down, and the
+		//other keys are left as they were.
+		if (ship == null) {
+			return;
 		}
-		 if(e.getKeyCode()== KeyEvent.VK_RIGHT)
+		ship.friction();
+		
+		if(code== KeyEvent.VK_RIGHT)
 		{
 			 //when the right key is released, the boolean is set to false.
 			rightPressed = false;
 			ship.friction();
 		}
-		if(e.getKeyCode()== KeyEvent.VK_UP)
+		if(code== KeyEvent.VK_UP)
 		{
 			//when the up key is released, the boolean is set to false
 			//and shipSpeed decreases.
 			shipAccel = false;
 			ship.friction();
-			
-			
-		}
-		
-		}
-		catch(Exception ex)
-		{
-			
 		}
 	}
 
@@ -749,10 +1263,10 @@ public class Controller implements CollisionListener, ActionListener, KeyListene
 	 */
 	@Override
 	public void timeExpired(Participant p) {
-		screen.setLegend("");
+		world.setLegend("");
 		
 		//removes the Ojbect from the screen.
-		screen.removeParticipant(p);
+		world.removeParticipant(p);
 		
 		//removes the bullet object from the ArrayList.
 		bulletTrack.remove(p);
@@ -1,42 +1,97 @@
 package asteroids;
-import javax.swing.*;
-import java.awt.event.*;
 
 /**
  * Provides objects that wait for a certain amount of time to pass
- * before making a callback to a CountdownTimerListener.
+ * before making a callback to a CountdownTimerListener.  Time is
+ * measured in refreshes of the world, so the countdown runs only
+ * while the game does.
  * @author Joe Zachary
  */
-public class CountdownTimer implements ActionListener {
+public class CountdownTimer extends TimingWheel.Timeout {
 	
 	// The participant that will be passed back in the callback
 	private Participant p;
 	
-	// Internal timer
-	private Timer timer;
+	// The participant's incarnation when the timer was created.  If the
+	// participant has since been recycled, the callback is not made.
+	private int incarnation;
 	
 	// Object that is to be notified when time expires
 	private CountdownTimerListener listener;
+	
+	// The world whose play is timed
+	private World world;
 
 	/**
-	 * Constructs an object that waits for the given number of milliseconds to pass
-	 * before invoking the timeExpired method on the listener and passing back the
-	 * provided participant as a parameter.
+	 * Constructs an object that waits for the given number of milliseconds
+	 * of play to pass in the world before invoking the timeExpired method on
+	 * the listener and passing back the provided participant as a parameter.
+	 */
+	public CountdownTimer (World world, CountdownTimerListener listener, Participant p, int msecs) {
+		this.world = world;
+		this.listener = listener;
+		restart(p, msecs);
+	}
+	
+	
+	/**
+	 * Constructs a timer that will make its callbacks to the listener but
+	 * isn't counting down yet
 	 */
-	public CountdownTimer (CountdownTimerListener listener, Participant p, int msecs) {
+	CountdownTimer (World world, CountdownTimerListener listener) {
+		this.world = world;
 		this.listener = listener;
+	}
+	
+	
+	/**
+	 * Starts the timer over, as though it had just been constructed with the
+	 * given participant and number of milliseconds.  This lets a timer that
+	 * has gone off be used again instead of creating another.
+	 */
+	public void restart (Participant p, int msecs) {
+		this.p = p;
+		incarnation = (p == null) ? 0 : p.getIncarnation();
+		world.getTimingWheel().schedule(this, TimingWheel.ticksFor(msecs));
+	}
+
+	/**
+	 * Returns the participant that will be passed back in the callback
+	 */
+	Participant getParticipant () {
+		return p;
+	}
+	
+	
+	/**
+	 * Returns the incarnation the participant must still be in for the
+	 * callback to be made
+	 */
+	int getIncarnation () {
+		return incarnation;
+	}
+	
+	
+	/**
+	 * Sets the timer to go off on the given tick for the participant in the
+	 * given incarnation, as found by getDeadline, getParticipant and
+	 * getIncarnation
+	 */
+	void restore (Participant p, int incarnation, long deadline) {
 		this.p = p;
-		timer = new Timer(msecs, this);
-		timer.start();
+		this.incarnation = incarnation;
+		world.getTimingWheel().scheduleAt(this, deadline);
 	}
 
 	/**
-	 * When the interval has passed, stops the timer and makes the callback.
+	 * When the interval has passed, makes the callback (unless the
+	 * participant has been recycled in the meantime).
 	 */
 	@Override
-	public void actionPerformed(ActionEvent e) {	
-		timer.stop();
-		listener.timeExpired(p);
+	protected void expire () {	
+		if (p == null || p.getIncarnation() == incarnation) {
+			listener.timeExpired(p);
+		}
 	}	
 	
 }
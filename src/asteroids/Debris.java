@@ -4,21 +4,23 @@ import java.awt.Shape;
 import java.awt.geom.Path2D;
 
 /**
- * Creates a Debris object that is used as
- * debris when thing collide in the Asteroids game.
+ * Holds the outline of the debris that is seen
+ * when thing collide in the Asteroids game.
+ * Debris is shown as particles, which need
+ * only this.
  * 
 * @author James Fairbourn
 */
-public class Debris extends Participant
+public class Debris
 {
-	//the outline of the debris
-	private Shape outline;
+	//the outline shared by every piece of debris.  It must not be modified.
+	private static final Shape OUTLINE = createDebris();
 	
 	/**
 	 * Creates the actual shape of a single piece
 	 * of debris with the specific coordinates.
 	 */
-	public Debris()
+	private static Shape createDebris()
 	{
 		Path2D.Double poly = new Path2D.Double();
 		poly.moveTo(1,0);
@@ -26,12 +28,15 @@ public class Debris extends Participant
 		poly.lineTo(1, 1);
 		poly.lineTo(0, 0);
 		poly.closePath();
-		outline = poly;
+		return poly;
 	}
-	@Override
-	Shape getOutline() {
-		
-		return outline;
+	
+	/**
+	 * Returns the outline shared by all debris.
+	 */
+	static Shape getSharedOutline()
+	{
+		return OUTLINE;
 	}
 
 }
@@ -0,0 +1,179 @@
+package asteroids;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Keeps track of the parts of the screen that need to be repainted.  The
+ * screen is divided into square tiles, and a tile is dirty if anything that
+ * needs repainting touches it.  The dirty tiles can then be gathered into a
+ * small number of rectangles: runs of dirty tiles along each row, with runs
+ * that line up in consecutive rows merged into one rectangle.
+ */
+class DirtyRegion {
+
+	// Size of a tile in pixels
+	private int tileSize;
+
+	// Number of columns and rows of tiles
+	private int columns, rows;
+
+	// Whether each tile (row by row) is dirty, and how many are
+	private boolean[] dirty;
+	private int dirtyCount;
+
+	// The rectangles covering the dirty tiles, as worked out by
+	// computeRectangles.  Only the first rectangleCount are in use; the rest
+	// are kept to be reused.
+	private ArrayList<Rectangle> rectangles;
+	private int rectangleCount;
+
+
+	/**
+	 * Creates a clean region covering width by height pixels
+	 */
+	public DirtyRegion (int width, int height, int tileSize) {
+		this.tileSize = tileSize;
+		columns = (width + tileSize - 1) / tileSize;
+		rows = (height + tileSize - 1) / tileSize;
+		dirty = new boolean[columns * rows];
+		dirtyCount = 0;
+		rectangles = new ArrayList<Rectangle>();
+		rectangleCount = 0;
+	}
+
+
+	/**
+	 * Makes every tile clean
+	 */
+	public void clear () {
+		if (dirtyCount > 0) {
+			Arrays.fill(dirty, false);
+			dirtyCount = 0;
+		}
+	}
+
+
+	/**
+	 * Makes every tile dirty
+	 */
+	public void fill () {
+		Arrays.fill(dirty, true);
+		dirtyCount = dirty.length;
+	}
+
+
+	/**
+	 * Makes dirty every tile touched by the box with the given corners.
+	 * Parts of the box off the screen are ignored.
+	 */
+	public void add (double minX, double minY, double maxX, double maxY) {
+		int c0 = Math.max(0, (int) Math.floor(minX / tileSize));
+		int r0 = Math.max(0, (int) Math.floor(minY / tileSize));
+		int c1 = Math.min(columns - 1, (int) Math.floor(maxX / tileSize));
+		int r1 = Math.min(rows - 1, (int) Math.floor(maxY / tileSize));
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int t = r*columns + c;
+				if (!dirty[t]) {
+					dirty[t] = true;
+					dirtyCount++;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Makes dirty every tile that is dirty in the other region, which must
+	 * have the same size and tiles as this one
+	 */
+	public void addAll (DirtyRegion other) {
+		for (int t = 0; t < dirty.length; t++) {
+			if (other.dirty[t] && !dirty[t]) {
+				dirty[t] = true;
+				dirtyCount++;
+			}
+		}
+	}
+
+
+	/**
+	 * Makes this region a copy of the other, which must have the same size
+	 * and tiles as this one
+	 */
+	public void copyFrom (DirtyRegion other) {
+		System.arraycopy(other.dirty, 0, dirty, 0, dirty.length);
+		dirtyCount = other.dirtyCount;
+	}
+
+
+	/**
+	 * Reports whether any tile is dirty
+	 */
+	public boolean isEmpty () {
+		return dirtyCount == 0;
+	}
+
+
+	/**
+	 * Returns the fraction of tiles that are dirty
+	 */
+	public double getCoverage () {
+		return (double) dirtyCount / dirty.length;
+	}
+
+
+	/**
+	 * Works out the rectangles covering the dirty tiles and returns how many
+	 * there are.  They can then be retrieved with getRectangle.
+	 */
+	public int computeRectangles () {
+		rectangleCount = 0;
+		for (int r = 0; r < rows; r++) {
+			int c = 0;
+			while (c < columns) {
+				if (!dirty[r*columns + c]) {
+					c++;
+					continue;
+				}
+				int start = c;
+				while (c < columns && dirty[r*columns + c]) {
+					c++;
+				}
+
+				// Grow a rectangle that ends at the previous row and has exactly
+				// this span, or else start a new one
+				Rectangle grown = null;
+				for (int k = 0; k < rectangleCount; k++) {
+					Rectangle rect = rectangles.get(k);
+					if (rect.x == start*tileSize && rect.width == (c - start)*tileSize &&
+						rect.y + rect.height == r*tileSize) {
+						grown = rect;
+						break;
+					}
+				}
+				if (grown != null) {
+					grown.height += tileSize;
+				}
+				else {
+					if (rectangleCount == rectangles.size()) {
+						rectangles.add(new Rectangle());
+					}
+					rectangles.get(rectangleCount++).setBounds(start*tileSize, r*tileSize, (c - start)*tileSize, tileSize);
+				}
+			}
+		}
+		return rectangleCount;
+	}
+
+
+	/**
+	 * Returns one of the rectangles worked out by computeRectangles.  The
+	 * rectangle is reused by the next call to computeRectangles.
+	 */
+	public Rectangle getRectangle (int i) {
+		return rectangles.get(i);
+	}
+}
@@ -0,0 +1,220 @@
+package asteroids;
+
+import java.awt.Shape;
+import java.util.Arrays;
+
+/**
+ * A snapshot of everything that needs to be drawn after one refresh of the
+ * screen: the outline, position and rotation of each participant, the
+ * outline and last two positions of each particle, and the legend.  The
+ * simulation fills in frames and the screen draws them, so a frame holds
+ * only plain values and never refers back to the participants.
+ */
+class Frame {
+
+	// Number of participants in the frame
+	int count;
+
+	// For each participant, its handle in the participant store (which is
+	// used to match it up with the same participant in another frame), its
+	// type, its outline (both as a Shape and as the collision shape that
+	// holds the outline's points), and where and how it was drawn
+	int[] handles;
+	int[] types;
+	Shape[] outlines;
+	CollisionShape[] shapes;
+	double[] x, y, rotation;
+
+	// Number of particles in the frame
+	int particleCount;
+	
+	// For each particle, its type and outline (as for participants), and
+	// where it was drawn in the previous refresh and in this one.  Particles
+	// don't turn, so they have no rotation.
+	int[] particleTypes;
+	Shape[] particleOutlines;
+	CollisionShape[] particleShapes;
+	double[] fromX, fromY, toX, toY;
+	
+	// The legend displayed across the screen
+	String legend;
+
+	// When the frame was finished, as given by System.nanoTime
+	long time;
+
+	// For each participant store slot, the position in this frame of the
+	// participant using it, or -1.  Only filled in by index().
+	private int[] positionOfSlot;
+
+
+	/**
+	 * Creates an empty frame
+	 */
+	public Frame () {
+		count = 0;
+		handles = new int[16];
+		types = new int[16];
+		outlines = new Shape[16];
+		shapes = new CollisionShape[16];
+		x = new double[16];
+		y = new double[16];
+		rotation = new double[16];
+		particleCount = 0;
+		particleTypes = new int[16];
+		particleOutlines = new Shape[16];
+		particleShapes = new CollisionShape[16];
+		fromX = new double[16];
+		fromY = new double[16];
+		toX = new double[16];
+		toY = new double[16];
+		legend = "";
+		time = 0;
+		positionOfSlot = new int[16];
+	}
+
+
+	/**
+	 * Empties the frame
+	 */
+	public void clear () {
+		Arrays.fill(outlines, 0, count, null);
+		Arrays.fill(shapes, 0, count, null);
+		count = 0;
+		Arrays.fill(particleOutlines, 0, particleCount, null);
+		Arrays.fill(particleShapes, 0, particleCount, null);
+		particleCount = 0;
+	}
+
+
+	/**
+	 * Adds a participant to the frame
+	 */
+	public void add (int handle, int type, Shape outline, CollisionShape shape, double px, double py, double r) {
+		if (count == handles.length) {
+			grow(2 * count);
+		}
+		handles[count] = handle;
+		types[count] = type;
+		outlines[count] = outline;
+		shapes[count] = shape;
+		x[count] = px;
+		y[count] = py;
+		rotation[count] = r;
+		count++;
+	}
+
+
+	/**
+	 * Adds a particle to the frame
+	 */
+	public void addParticle (int type, Shape outline, CollisionShape shape, double x0, double y0, double x1, double y1) {
+		if (particleCount == particleTypes.length) {
+			growParticles(2 * particleCount);
+		}
+		particleTypes[particleCount] = type;
+		particleOutlines[particleCount] = outline;
+		particleShapes[particleCount] = shape;
+		fromX[particleCount] = x0;
+		fromY[particleCount] = y0;
+		toX[particleCount] = x1;
+		toY[particleCount] = y1;
+		particleCount++;
+	}
+	
+	
+	/**
+	 * Makes this frame a copy of another
+	 */
+	public void copyFrom (Frame f) {
+		if (handles.length < f.count) {
+			grow(f.count);
+		}
+		Arrays.fill(outlines, f.count, Math.max(count, f.count), null);
+		Arrays.fill(shapes, f.count, Math.max(count, f.count), null);
+		count = f.count;
+		System.arraycopy(f.handles, 0, handles, 0, count);
+		System.arraycopy(f.types, 0, types, 0, count);
+		System.arraycopy(f.outlines, 0, outlines, 0, count);
+		System.arraycopy(f.shapes, 0, shapes, 0, count);
+		System.arraycopy(f.x, 0, x, 0, count);
+		System.arraycopy(f.y, 0, y, 0, count);
+		System.arraycopy(f.rotation, 0, rotation, 0, count);
+		if (particleTypes.length < f.particleCount) {
+			growParticles(f.particleCount);
+		}
+		Arrays.fill(particleOutlines, f.particleCount, Math.max(particleCount, f.particleCount), null);
+		Arrays.fill(particleShapes, f.particleCount, Math.max(particleCount, f.particleCount), null);
+		particleCount = f.particleCount;
+		System.arraycopy(f.particleTypes, 0, particleTypes, 0, particleCount);
+		System.arraycopy(f.particleOutlines, 0, particleOutlines, 0, particleCount);
+		System.arraycopy(f.particleShapes, 0, particleShapes, 0, particleCount);
+		System.arraycopy(f.fromX, 0, fromX, 0, particleCount);
+		System.arraycopy(f.fromY, 0, fromY, 0, particleCount);
+		System.arraycopy(f.toX, 0, toX, 0, particleCount);
+		System.arraycopy(f.toY, 0, toY, 0, particleCount);
+		legend = f.legend;
+		time = f.time;
+	}
+
+
+	/**
+	 * Prepares the frame for calls to find
+	 */
+	public void index () {
+		int slots = 0;
+		for (int i = 0; i < count; i++) {
+			slots = Math.max(slots, ParticipantStore.slotOf(handles[i]) + 1);
+		}
+		if (positionOfSlot.length < slots) {
+			positionOfSlot = new int[Math.max(slots, 2 * positionOfSlot.length)];
+		}
+		Arrays.fill(positionOfSlot, -1);
+		for (int i = 0; i < count; i++) {
+			positionOfSlot[ParticipantStore.slotOf(handles[i])] = i;
+		}
+	}
+
+
+	/**
+	 * Returns the position in this frame of the participant with the given
+	 * handle, or -1 if it isn't in the frame.  The frame must have been
+	 * indexed since it was last changed.
+	 */
+	public int find (int handle) {
+		int slot = ParticipantStore.slotOf(handle);
+		if (slot >= positionOfSlot.length) {
+			return -1;
+		}
+		int i = positionOfSlot[slot];
+		return (i >= 0 && handles[i] == handle) ? i : -1;
+	}
+
+
+	/**
+	 * Enlarges the arrays to hold at least the given number of participants
+	 */
+	private void grow (int capacity) {
+		handles = Arrays.copyOf(handles, capacity);
+		types = Arrays.copyOf(types, capacity);
+		outlines = Arrays.copyOf(outlines, capacity);
+		shapes = Arrays.copyOf(shapes, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		rotation = Arrays.copyOf(rotation, capacity);
+	}
+	
+	
+	/**
+	 * Enlarges the particle arrays to hold at least the given number of
+	 * particles
+	 */
+	private void growParticles (int capacity) {
+		particleTypes = Arrays.copyOf(particleTypes, capacity);
+		particleOutlines = Arrays.copyOf(particleOutlines, capacity);
+		particleShapes = Arrays.copyOf(particleShapes, capacity);
+		fromX = Arrays.copyOf(fromX, capacity);
+		fromY = Arrays.copyOf(fromY, capacity);
+		toX = Arrays.copyOf(toX, capacity);
+		toY = Arrays.copyOf(toY, capacity);
+	}
+}
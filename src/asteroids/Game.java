@@ -2,6 +2,7 @@ package asteroids;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.*;
 import static asteroids.Constants.*;
 /**
  * Implements an asteroid game.
@@ -36,7 +37,7 @@ public class Game extends JApplet {
 		//this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
 		// The main playing area and the controller
-		Screen screen = new Screen();
+		final Screen screen = new Screen();
 		Controller controller = new Controller(this, screen);
 
 		// This panel contains the screen to prevent the screen from being resized
@@ -51,6 +52,17 @@ public class Game extends JApplet {
 		JButton startGame = new JButton(START_LABEL);
 		controls.add(startGame);
 		
+		// Switches between stroked outlines and pictures, so that the two
+		// can be compared
+		final JCheckBox raster = new JCheckBox(RASTER_LABEL, screen.isRasterMode());
+		raster.setFocusable(false);
+		raster.addActionListener(new ActionListener() {
+			public void actionPerformed (ActionEvent e) {
+				screen.setRasterMode(raster.isSelected());
+			}
+		});
+		controls.add(raster);
+		
 		//Creates the labels of score and lives
 		JPanel labels = new JPanel();
 		lives = new JLabel();
@@ -75,22 +87,32 @@ public class Game extends JApplet {
 	}	
 /**
  * Sets the current text and score that was
- * sent in as a parameter.
+ * sent in as a parameter.  This can be called
+ * from any thread.
  * @param score the score of the current game.
  */
-public void getScore(int score)
+public void getScore(final int score)
 {
-	gameScore.setText("Score: " + score);
+	SwingUtilities.invokeLater(new Runnable() {
+		public void run() {
+			gameScore.setText("Score: " + score);
+		}
+	});
 }
 
 /**
  * Sets the current text and life count that was
- * sent in as a parameter.
+ * sent in as a parameter.  This can be called
+ * from any thread.
  * @param live the number of lives of the current game. 
  */
-public void getLive(int live)
+public void getLive(final int live)
 {
-	lives.setText("Lives: " + live);
+	SwingUtilities.invokeLater(new Runnable() {
+		public void run() {
+			lives.setText("Lives: " + live);
+		}
+	});
 }
 }
 
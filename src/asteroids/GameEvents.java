@@ -0,0 +1,166 @@
+package asteroids;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Events that the game reports to JDK Flight Recorder, so that what the
+ * game was doing can be lined up with garbage collections and other pauses
+ * in a recording.  Each kind of event has an instance that is never
+ * committed and is only used to ask whether that kind is being recorded.
+ * Code that reports an event checks first and only creates the event if it
+ * is, so reporting costs next to nothing when nothing is being recorded.
+ */
+class GameEvents {
+
+	/**
+	 * One refresh of the world, with the time taken by each phase
+	 */
+	@Name("asteroids.Tick")
+	@Label("Tick")
+	@Category("Asteroids")
+	@Description("One refresh of the world")
+	@StackTrace(false)
+	static class Tick extends Event {
+		@Label("Participants")
+		int participants;
+
+		@Label("Particles")
+		int particles;
+
+		@Label("Adds and Removes")
+		@Timespan
+		long addsAndRemoves;
+
+		@Label("Move")
+		@Timespan
+		long move;
+
+		@Label("Particle Advance")
+		@Timespan
+		long advance;
+
+		@Label("Collision Detection")
+		@Timespan
+		long collisions;
+
+		@Label("Collision Dispatch")
+		@Timespan
+		long dispatch;
+
+		@Label("Publish")
+		@Timespan
+		long publish;
+	}
+
+
+	/**
+	 * One search for collisions, including dealing with what it found
+	 */
+	@Name("asteroids.Collisions")
+	@Label("Collisions")
+	@Category("Asteroids")
+	@Description("One search for collisions and the delivery of the batch found")
+	@StackTrace(false)
+	static class Collisions extends Event {
+		@Label("Participants")
+		int participants;
+
+		@Label("Shared Cells")
+		@Description("Times two participants were found in the same cell of the grid")
+		int sharedCells;
+
+		@Label("Tested Pairs")
+		int testedPairs;
+
+		@Label("Collisions")
+		int collisions;
+	}
+
+
+	/**
+	 * An asteroid being destroyed, and perhaps broken into smaller ones
+	 */
+	@Name("asteroids.Breakup")
+	@Label("Asteroid Breakup")
+	@Category("Asteroids")
+	@StackTrace(false)
+	static class Breakup extends Event {
+		@Label("Size")
+		int size;
+
+		@Label("Fragments")
+		int fragments;
+
+		@Label("Asteroids Destroyed")
+		@Description("Asteroids destroyed so far on this level")
+		int destroyed;
+
+		@Label("Participants")
+		int participants;
+
+		@Label("Particles")
+		int particles;
+	}
+
+
+	/**
+	 * A change in the state of the game, such as starting a new level
+	 */
+	@Name("asteroids.Transition")
+	@Label("Transition")
+	@Category("Asteroids")
+	@StackTrace(false)
+	static class Transition extends Event {
+		@Label("Kind")
+		String kind;
+
+		@Label("Level")
+		int level;
+
+		@Label("Lives")
+		int lives;
+
+		@Label("Score")
+		int score;
+
+		@Label("Participants")
+		int participants;
+	}
+
+
+	/**
+	 * A sound effect being started
+	 */
+	@Name("asteroids.Sound")
+	@Label("Sound")
+	@Category("Asteroids")
+	@StackTrace(false)
+	static class Sound extends Event {
+		@Label("Sound")
+		String sound;
+
+		@Label("Voice")
+		int voice;
+
+		@Label("Busy Voices")
+		@Description("Voices of this sound that were still playing")
+		int busy;
+
+		@Label("Waiting Requests")
+		int waiting;
+	}
+
+
+	// Instances used to ask whether each kind of event is being recorded
+	static final Tick TICK = new Tick();
+	static final Collisions COLLISIONS = new Collisions();
+	static final Breakup BREAKUP = new Breakup();
+	static final Transition TRANSITION = new Transition();
+	static final Sound SOUND = new Sound();
+}
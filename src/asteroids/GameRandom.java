@@ -0,0 +1,69 @@
+package asteroids;
+
+import java.util.Random;
+
+/**
+ * A random number generator whose state can be saved and restored, so that
+ * a game picked up from a keyframe goes on to draw the same numbers as the
+ * game that was recorded.  It uses the same linear congruential generator
+ * as java.util.Random, so a GameRandom and a Random given the same seed
+ * produce the same numbers.  Its state is an ordinary field, so it is
+ * saved along with the rest of the object when it is serialized.
+ */
+class GameRandom extends Random {
+	private final static long serialVersionUID = 1L;
+
+	// Constants of the generator, as specified by java.util.Random
+	private final static long MULTIPLIER = 0x5DEECE66DL;
+	private final static long ADDEND = 0xBL;
+	private final static long MASK = (1L << 48) - 1;
+
+	// The generator's 48 bits of state.  This is set by setSeed, which the
+	// superclass constructor calls, so it must not have an initializer.  The
+	// superclass's own seed is serialized too, but is never used.
+	private long state;
+
+
+	/**
+	 * Creates a generator with the given seed
+	 */
+	public GameRandom (long seed) {
+		super(seed);
+	}
+
+
+	/**
+	 * Sets the seed, as java.util.Random does
+	 */
+	@Override
+	public synchronized void setSeed (long seed) {
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+
+	/**
+	 * Returns the current state of the generator
+	 */
+	public long getState () {
+		return state;
+	}
+
+
+	/**
+	 * Puts the generator back into a state returned by getState
+	 */
+	public void setState (long state) {
+		this.state = state & MASK;
+	}
+
+
+	/**
+	 * Advances the generator and returns the given number of random bits
+	 */
+	@Override
+	protected int next (int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+}
@@ -0,0 +1,69 @@
+package asteroids;
+
+import java.io.IOException;
+import static asteroids.Constants.*;
+
+/**
+ * Plays games of asteroids with no display, sound or timers, as fast as the
+ * processor allows, and reports how they went.  The ship is flown by a
+ * random pilot that holds each combination of controls for a random number
+ * of ticks.  Runs with the same seed play out identically, which makes this
+ * useful for balancing the game and for catching changes in its rules.
+ * If a file is named, the run is recorded to it so that Replay can play it
+ * back.
+ * <p>
+ * Usage: java asteroids.Headless [ticks] [seed] [recording]
+ */
+public class Headless {
+
+	/**
+	 * Runs the games
+	 */
+	public static void main (String[] args) throws IOException {
+		long ticks = (args.length > 0) ? Long.parseLong(args[0]) : 1000000;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+
+		World world = new World();
+		Controller controller = new Controller(world, seed);
+		Pilot pilot = new Pilot(seed + 1);
+		Recorder recorder = null;
+		if (args.length > 2) {
+			recorder = new Recorder(args[2], controller);
+			controller.setRecorder(recorder);
+		}
+		controller.newGame();
+
+		int games = 0;
+		long totalScore = 0;
+		int bestScore = 0;
+		int bestLevel = 0;
+		long start = System.nanoTime();
+
+		for (long t = 0; t < ticks; t++) {
+			controller.step(pilot.next());
+
+			// Once the game is over, record it and start another
+			if (controller.getLives() == 0 && GAME_OVER.equals(world.getLegend())) {
+				games++;
+				totalScore += controller.getScore();
+				bestScore = Math.max(bestScore, controller.getScore());
+				bestLevel = Math.max(bestLevel, controller.getLevel());
+				controller.newGame();
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		if (recorder != null) {
+			recorder.close();
+		}
+		System.out.println("Ticks:        " + ticks);
+		System.out.println("Seconds:      " + seconds);
+		System.out.println("Ticks/second: " + (long) (ticks / seconds));
+		System.out.println("Games:        " + games);
+		System.out.println("Mean score:   " + ((games == 0) ? 0 : totalScore / games));
+		System.out.println("Best score:   " + bestScore);
+		System.out.println("Best level:   " + bestLevel);
+		System.out.println("Final score:  " + controller.getScore());
+		System.out.println("Checksum:     " + Long.toHexString(world.getChecksum()));
+	}
+}
@@ -0,0 +1,141 @@
+package asteroids;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Times key events through each stage between the player pressing a key
+ * and the result appearing on the screen.  Every stage is timed from when
+ * the event was received on the event dispatch thread: until the
+ * simulation applied it at the start of a tick, until that tick had been
+ * simulated, and until the first frame that includes that tick had been
+ * painted.  Each stage has its own histogram, and all of them can be
+ * printed at any time.  The simulation thread and the event dispatch
+ * thread both report to the same object, so its methods are synchronized.
+ */
+class InputLatency {
+
+	// Percentiles shown when the histograms are printed
+	private final static double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	// Histograms for the three stages
+	private LatencyHistogram applied, simulated, painted;
+
+	// Events that have been simulated but not yet painted: when each was
+	// received, and the time of the frame published by its tick
+	private long[] waitingReceived, waitingFrame;
+	private int waiting;
+
+	// Number of events that were lost before they could be applied
+	private long dropped;
+
+
+	/**
+	 * Creates a tracker with empty histograms
+	 */
+	public InputLatency () {
+		applied = new LatencyHistogram();
+		simulated = new LatencyHistogram();
+		painted = new LatencyHistogram();
+		waitingReceived = new long[16];
+		waitingFrame = new long[16];
+		waiting = 0;
+		dropped = 0;
+	}
+
+
+	/**
+	 * Records that an event received at the given time was applied at the
+	 * start of a tick at the given time.  Times are as given by
+	 * System.nanoTime.
+	 */
+	public synchronized void applied (long received, long now) {
+		applied.record(now - received);
+	}
+
+
+	/**
+	 * Records that the tick that applied an event received at the given time
+	 * has finished and published a frame with the given time.
+	 */
+	public synchronized void simulated (long received, long now, long frameTime) {
+		simulated.record(now - received);
+		if (waiting == waitingReceived.length) {
+			
+			// Frames aren't being painted.  Forget the oldest events rather
+			// than let them pile up.
+			int half = waiting / 2;
+			System.arraycopy(waitingReceived, half, waitingReceived, 0, waiting - half);
+			System.arraycopy(waitingFrame, half, waitingFrame, 0, waiting - half);
+			waiting -= half;
+		}
+		waitingReceived[waiting] = received;
+		waitingFrame[waiting] = frameTime;
+		waiting++;
+	}
+
+
+	/**
+	 * Records that painting a frame with the given time finished at the
+	 * given time.  Every waiting event whose frame is this one or an earlier
+	 * one has now reached the screen.
+	 */
+	public synchronized void painted (long frameTime, long now) {
+		int kept = 0;
+		for (int i = 0; i < waiting; i++) {
+			if (waitingFrame[i] <= frameTime) {
+				painted.record(now - waitingReceived[i]);
+			}
+			else {
+				waitingReceived[kept] = waitingReceived[i];
+				waitingFrame[kept] = waitingFrame[i];
+				kept++;
+			}
+		}
+		waiting = kept;
+	}
+
+
+	/**
+	 * Records that an event was lost before it could be applied
+	 */
+	public synchronized void dropped () {
+		dropped++;
+	}
+
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	public synchronized void clear () {
+		applied.clear();
+		simulated.clear();
+		painted.clear();
+		waiting = 0;
+		dropped = 0;
+	}
+
+
+	/**
+	 * Prints the percentiles of each stage in milliseconds
+	 */
+	public synchronized void print (PrintStream out) {
+		out.println("Input latency (ms) " + Arrays.toString(PERCENTILES) + " max, count; " + dropped + " dropped");
+		print(out, "  applied:   ", applied);
+		print(out, "  simulated: ", simulated);
+		print(out, "  painted:   ", painted);
+	}
+
+
+	/**
+	 * Prints one histogram's percentiles on a line
+	 */
+	private static void print (PrintStream out, String label, LatencyHistogram h) {
+		StringBuilder line = new StringBuilder(label);
+		for (double p: PERCENTILES) {
+			line.append(String.format("%8.2f", h.getPercentile(p) / 1000.0));
+		}
+		line.append(String.format("%8.2f%8d", h.getMax() / 1000.0, h.getCount()));
+		out.println(line);
+	}
+}
@@ -0,0 +1,104 @@
+package asteroids;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size queue of key events that passes them from the event
+ * dispatch thread to the simulation thread without locks or allocation.
+ * Exactly one thread may call offer and exactly one thread may call next.
+ * Each event is stamped with the System.nanoTime at which it was offered,
+ * so that the consumer can tell how long it waited.
+ */
+class InputRing {
+
+	// Number of events the ring can hold.  Must be a power of two.
+	private final static int CAPACITY = 256;
+	private final static int MASK = CAPACITY - 1;
+
+	// For each slot, the key code and whether the key went down, and when
+	// the event was offered
+	private final int[] codes;
+	private final boolean[] downs;
+	private final long[] times;
+
+	// Number of events ever taken and ever offered.  Each is written only by
+	// its own side; the lazy sets publish the slots written before them.
+	private final AtomicLong head, tail;
+
+	// The event that next last moved to (only used by the consumer)
+	private int code;
+	private boolean down;
+	private long time;
+
+
+	/**
+	 * Creates an empty ring
+	 */
+	public InputRing () {
+		codes = new int[CAPACITY];
+		downs = new boolean[CAPACITY];
+		times = new long[CAPACITY];
+		head = new AtomicLong();
+		tail = new AtomicLong();
+	}
+
+
+	/**
+	 * Adds a key event, stamped with the current time, and reports whether
+	 * there was room for it.  Only called by the producer.
+	 */
+	public boolean offer (int keyCode, boolean keyDown) {
+		long t = tail.get();
+		if (t - head.get() == CAPACITY) {
+			return false;
+		}
+		int slot = (int) t & MASK;
+		codes[slot] = keyCode;
+		downs[slot] = keyDown;
+		times[slot] = System.nanoTime();
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+
+	/**
+	 * Moves on to the oldest event that hasn't been taken yet and reports
+	 * whether there was one.  Only called by the consumer.
+	 */
+	public boolean next () {
+		long h = head.get();
+		if (h == tail.get()) {
+			return false;
+		}
+		int slot = (int) h & MASK;
+		code = codes[slot];
+		down = downs[slot];
+		time = times[slot];
+		head.lazySet(h + 1);
+		return true;
+	}
+
+
+	/**
+	 * Returns the key code of the current event
+	 */
+	public int getCode () {
+		return code;
+	}
+
+
+	/**
+	 * Reports whether the key of the current event went down (rather than up)
+	 */
+	public boolean isDown () {
+		return down;
+	}
+
+
+	/**
+	 * Returns when the current event was offered, as given by System.nanoTime
+	 */
+	public long getTime () {
+		return time;
+	}
+}
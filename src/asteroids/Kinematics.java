@@ -0,0 +1,180 @@
+package asteroids;
+
+import static asteroids.Constants.*;
+
+/**
+ * Loops that advance whole arrays of motion state at once: the positions
+ * and timers of particles, and the positions and speeds of participants.
+ * Each loop works on the elements from start up to (but not including) end,
+ * so that a range can be handed to each of several threads.
+ * <p>
+ * These are the plain loops, which run one element at a time.  When the
+ * jdk.incubator.vector module is present (run with --add-modules
+ * jdk.incubator.vector, with VectorKinematics compiled from the vector
+ * source folder), vector() returns loops that do the same arithmetic on
+ * several elements per instruction.  Either way every element comes out
+ * with exactly the same bits, so games play out identically with both.
+ */
+class Kinematics {
+
+	// Name of the class that holds the vector loops, which is only loaded
+	// if the vector module is present
+	private final static String VECTOR_CLASS = "asteroids.VectorKinematics";
+
+	// The plain loops, shared by everything that uses them
+	private final static Kinematics SCALAR = new Kinematics();
+
+	// The vector loops (or null if they can't be used), and whether they
+	// have been looked for
+	private static Kinematics vector;
+	private static boolean vectorChecked;
+
+
+	/**
+	 * Returns the plain loops
+	 */
+	public static Kinematics scalar () {
+		return SCALAR;
+	}
+
+
+	/**
+	 * Returns the vector loops, or null if the vector module isn't present
+	 * or the loops can't be loaded
+	 */
+	public static synchronized Kinematics vector () {
+		if (!vectorChecked) {
+			vectorChecked = true;
+			if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+				try {
+					vector = (Kinematics) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+				}
+				catch (ReflectiveOperationException e) {
+					vector = null;
+				}
+				catch (LinkageError e) {
+					vector = null;
+				}
+			}
+		}
+		return vector;
+	}
+
+
+	/**
+	 * Returns the loops that the game uses: the vector loops if they can be
+	 * used and haven't been turned off with -Dasteroids.vector=false, and
+	 * the plain loops otherwise
+	 */
+	public static Kinematics preferred () {
+		if (System.getProperty("asteroids.vector", "true").equals("true")) {
+			Kinematics loops = vector();
+			if (loops != null) {
+				return loops;
+			}
+		}
+		return SCALAR;
+	}
+
+
+	/**
+	 * Returns a short description of the loops
+	 */
+	public String getName () {
+		return "scalar";
+	}
+
+
+	/**
+	 * Counts down the timers by one tick
+	 */
+	public void countDown (int[] ticks, int start, int end) {
+		for (int i = start; i < end; i++) {
+			ticks[i]--;
+		}
+	}
+
+
+	/**
+	 * Advances particle positions along one axis by their speeds.  The
+	 * drawn position of each is moved into previous and replaced by its new
+	 * position.  Those that have gone entirely off the screen, given the
+	 * extent of their outlines from low to high about their centers, are
+	 * wrapped around to the other side for the next tick, just as
+	 * participants are.
+	 */
+	public void drift (double[] pos, double[] speed, double[] drawn, double[] previous,
+					   double[] low, double[] high, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double p = pos[i] + speed[i];
+			previous[i] = drawn[i];
+			drawn[i] = p;
+
+			// At most one of these applies, since a wrapped position is back
+			// on the screen
+			double extent = high[i] - low[i];
+			double under = (p + high[i] < 0) ? SIZE + extent : 0;
+			double over = (p + low[i] >= SIZE) ? -SIZE - extent : 0;
+			pos[i] = p + under + over;
+		}
+	}
+
+
+	/**
+	 * Puts into next the positions along one axis that participants move
+	 * to, which are their positions plus their speeds
+	 */
+	public void advance (double[] pos, double[] speed, double[] next, int start, int end) {
+		for (int i = start; i < end; i++) {
+			next[i] = pos[i] + speed[i];
+		}
+	}
+
+
+	/**
+	 * Sets the positions along one axis of participants that have moved to
+	 * next, and whose outlines there run from min to max.  Those that have
+	 * gone entirely off the screen are wrapped around to the other side, as
+	 * Participant.move does.
+	 */
+	public void wrap (double[] next, double[] min, double[] max, double[] pos, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double p = next[i];
+			double extent = max[i] - min[i];
+			if (max[i] < 0) {
+				p += SIZE + extent;
+			}
+			else if (min[i] >= SIZE) {
+				p += -SIZE - extent;
+			}
+			pos[i] = p;
+		}
+	}
+
+
+	/**
+	 * Slows down the participants that are moving and have friction, as
+	 * Participant.friction does.  Each is accelerated by its friction
+	 * against its direction of motion, or stopped if that would reverse it.
+	 */
+	public void friction (double[] speedX, double[] speedY, double[] friction, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double sx = speedX[i];
+			double sy = speedY[i];
+			double f = friction[i];
+			if (f != 0 && (sx != 0 || sy != 0)) {
+				double speed = Math.sqrt(sx*sx + sy*sy);
+				double dx = f * sx / speed;
+				double dy = f * sy / speed;
+				if (Math.abs(dx) > Math.abs(sx) || Math.abs(dy) > Math.abs(sy)) {
+					speedX[i] = 0;
+					speedY[i] = 0;
+				}
+				else {
+					speedX[i] = sx + dx;
+					speedY[i] = sy + dy;
+				}
+			}
+		}
+	}
+}
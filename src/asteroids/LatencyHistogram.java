@@ -0,0 +1,116 @@
+package asteroids;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often latencies of different lengths occur, so that their
+ * percentiles can be found.  Latencies are kept in microseconds in buckets
+ * that double in width with each power of two, each split into SUB_BUCKETS
+ * equal parts, so every latency is known to within about six percent no
+ * matter how long it is.  Recording takes constant time and never
+ * allocates.
+ */
+class LatencyHistogram {
+
+	// Number of equal parts that each power of two is split into
+	private final static int SUB_BITS = 4;
+	private final static int SUB_BUCKETS = 1 << SUB_BITS;
+
+	// Number of latencies in each bucket
+	private long[] counts;
+
+	// Number of latencies recorded, and the longest in microseconds
+	private long count;
+	private long max;
+
+
+	/**
+	 * Creates an empty histogram
+	 */
+	public LatencyHistogram () {
+		counts = new long[bucketOf(Long.MAX_VALUE) + 1];
+	}
+
+
+	/**
+	 * Records a latency given in nanoseconds
+	 */
+	public void record (long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts[bucketOf(micros)]++;
+		count++;
+		max = Math.max(max, micros);
+	}
+
+
+	/**
+	 * Forgets every latency recorded
+	 */
+	public void clear () {
+		Arrays.fill(counts, 0);
+		count = 0;
+		max = 0;
+	}
+
+
+	/**
+	 * Returns the number of latencies recorded
+	 */
+	public long getCount () {
+		return count;
+	}
+
+
+	/**
+	 * Returns the longest latency recorded, in microseconds
+	 */
+	public long getMax () {
+		return max;
+	}
+
+
+	/**
+	 * Returns the latency in microseconds that the given percentage of the
+	 * recorded latencies are no longer than, or 0 if none have been
+	 * recorded.  The answer is the top of the bucket that the percentile
+	 * falls in, but never more than the longest latency recorded.
+	 */
+	public long getPercentile (double percent) {
+		long wanted = (long) Math.ceil(count * percent / 100);
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= wanted && seen > 0) {
+				return Math.min(max, topOf(b));
+			}
+		}
+		return max;
+	}
+
+
+	/**
+	 * Returns the bucket that holds a latency of the given number of
+	 * microseconds.  Latencies under 2*SUB_BUCKETS each have their own
+	 * bucket; above that, each power of two gets SUB_BUCKETS of them.
+	 */
+	private static int bucketOf (long micros) {
+		if (micros < 2 * SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+	}
+
+
+	/**
+	 * Returns the longest latency in microseconds that falls in the bucket
+	 */
+	private static long topOf (int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long bottom = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return bottom + (1L << shift) - 1;
+	}
+}
@@ -2,6 +2,9 @@ package asteroids;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import static asteroids.Constants.*;
 
 /**
@@ -21,8 +24,44 @@ abstract public class Participant {
 	// Current offset of center from initial position
 	private double x, y;
 	
-	// Current (transformed) border of element
-	private Shape border;
+	// While the participant is on a screen, its motion state is kept in that
+	// screen's store (and the five fields above are out of date).  The handle
+	// identifies its entry in the store.
+	private ParticipantStore store;
+	private int handle;
+	
+	// The pool this participant goes back to when it leaves the screen (if
+	// any), and how many times it has been handed out by a pool
+	private ParticipantPool<?> pool;
+	private int incarnation;
+	
+	// Whether the participant has been moved (and so has a border) since it
+	// was created or reused
+	private boolean moved;
+	
+	// The points of the outline as placed by the last move (the border), and
+	// their bounding box.  Both are overwritten in place by every move.
+	private double[] borderPoints;
+	private Rectangle2D.Double bounds;
+	
+	// Position and rotation (also as cosine and sine) used to produce the border
+	private double borderX, borderY, borderRotation, borderCos, borderSin;
+	
+	// The cosine and sine of the most recently used rotation, which are
+	// reused for as long as the participant doesn't turn
+	private double trigRotation, trigCos, trigSin;
+	private boolean trigCurrent;
+	
+	// The outline broken into convex pieces, and those pieces (and their
+	// bounding boxes) transformed to match the border.  The transformed
+	// pieces are only brought up to date when they are needed.
+	private Shape collisionOutline;
+	private CollisionShape collisionShape;
+	private double[] worldVertices, worldBoxes;
+	private boolean worldCurrent;
+	
+	// A bit for each ParticipantSet this participant is in
+	int setMarks;
 
 	
 	/**
@@ -34,7 +73,153 @@ abstract public class Participant {
 		rotation = 0;
 		x = 0;
 		y = 0;
-		border = null;
+		store = null;
+		handle = -1;
+		pool = null;
+		incarnation = 0;
+		moved = false;
+		bounds = new Rectangle2D.Double();
+		trigCurrent = false;
+	}
+	
+	
+	/**
+	 * Readies this participant to be handed out by a pool: it is put at rest
+	 * at the origin with no rotation, and its incarnation is advanced so that
+	 * anything still referring to its previous use can tell.
+	 */
+	void reuse (ParticipantPool<?> pool) {
+		this.pool = pool;
+		incarnation++;
+		speedX = 0;
+		speedY = 0;
+		rotation = 0;
+		x = 0;
+		y = 0;
+		moved = false;
+		worldCurrent = false;
+	}
+	
+	
+	/**
+	 * Returns this participant to the pool it came from, if any.  This is
+	 * called once the participant has been taken off the screen.
+	 */
+	void recycle () {
+		if (pool != null) {
+			ParticipantPool<?> owner = pool;
+			pool = null;
+			owner.release(this);
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of times this participant has been handed out by a
+	 * pool.  A participant that hasn't come from a pool is always in its
+	 * first incarnation.
+	 */
+	public int getIncarnation () {
+		return incarnation;
+	}
+	
+	
+	/**
+	 * Writes the motion state and incarnation of this participant, and
+	 * whether it has been handed out by a pool
+	 */
+	void writeState (DataOutput out) throws IOException {
+		out.writeDouble(getX());
+		out.writeDouble(getY());
+		out.writeDouble(getSpeedX());
+		out.writeDouble(getSpeedY());
+		out.writeDouble(getRotation());
+		out.writeInt(incarnation);
+		out.writeBoolean(pool != null);
+	}
+	
+	
+	/**
+	 * Reads state written by writeState into this participant, which must
+	 * not be on a screen.  If it had been handed out by a pool, it will go
+	 * back to the given one.
+	 */
+	void readState (ByteBuffer in, ParticipantPool<?> pool) {
+		x = in.getDouble();
+		y = in.getDouble();
+		speedX = in.getDouble();
+		speedY = in.getDouble();
+		rotation = in.getDouble();
+		incarnation = in.getInt();
+		this.pool = (in.get() != 0) ? pool : null;
+		moved = false;
+		worldCurrent = false;
+	}
+	
+	
+	/**
+	 * Returns the type tag (one of the constants in ParticipantStore) that
+	 * identifies what kind of participant this is.
+	 */
+	int getType () {
+		return ParticipantStore.OTHER;
+	}
+	
+	
+	/**
+	 * Returns the collision layer (a single bit) that this participant is on.
+	 * Participants of each type are on a layer of their own.
+	 */
+	int getCollisionLayer () {
+		return ParticipantStore.layerOf(getType());
+	}
+	
+	
+	/**
+	 * Returns the collision layers of the participants that this participant
+	 * can collide with.  Two participants are only tested for overlap, and
+	 * collisions between them only reported, if each one's layer is in the
+	 * other's mask.  By default a participant can collide with anything.  The
+	 * layer and mask are read when the participant is added to the screen.
+	 */
+	int getCollisionMask () {
+		return ParticipantStore.ALL_LAYERS;
+	}
+	
+	
+	/**
+	 * Moves the motion state of this participant into the store.  From now on
+	 * the participant reads and writes its state there.
+	 */
+	void attach (ParticipantStore store) {
+		handle = store.add(this, x, y, speedX, speedY, rotation, getType(), getCollisionLayer(), getCollisionMask(),
+			getFriction());
+		this.store = store;
+	}
+	
+	
+	/**
+	 * Copies the motion state of this participant out of its store and removes
+	 * it from the store.
+	 */
+	void detach () {
+		int i = store.indexOf(handle);
+		x = store.x[i];
+		y = store.y[i];
+		speedX = store.speedX[i];
+		speedY = store.speedY[i];
+		rotation = store.rotation[i];
+		store.remove(handle);
+		store = null;
+		handle = -1;
+	}
+	
+	
+	/**
+	 * Reports whether this participant's state is being kept in the store
+	 */
+	boolean isAttachedTo (ParticipantStore store) {
+		return this.store == store && store != null;
 	}
 
 	
@@ -44,8 +229,7 @@ abstract public class Participant {
 	 * is in radians.
 	 */
 	public void setVelocity (double speed, double direction) {
-		speedX = Math.cos(direction) * speed;
-		speedY = Math.sin(direction) * speed;
+		setSpeed(Math.cos(direction) * speed, Math.sin(direction) * speed);
 	}
 	
 	
@@ -53,7 +237,12 @@ abstract public class Participant {
 	 * Sets the rotation (in radians) of the participant
 	 */
 	public void setRotation (double radians) {
-		rotation = radians;
+		if (store != null) {
+			store.rotation[store.indexOf(handle)] = radians;
+		}
+		else {
+			rotation = radians;
+		}
 	}
 	
 	
@@ -61,7 +250,7 @@ abstract public class Participant {
 	 * Rotates the participant by delta radians.
 	 */
 	public void rotate (double delta) {
-		rotation += delta;
+		setRotation(getRotation() + delta);
 	}
 	
 	
@@ -70,6 +259,9 @@ abstract public class Participant {
 	 * @return
 	 */
 	public double getRotation () {
+		if (store != null) {
+			return store.rotation[store.indexOf(handle)];
+		}
 		return rotation;
 	}
 	
@@ -79,14 +271,16 @@ abstract public class Participant {
 	 * cannot accelerate beyond the speed limit.
 	 */
 	public void accelerate (double delta) {
+		double rotation = getRotation();
 		double deltaX = delta*Math.cos(rotation);
 		double deltaY = delta*Math.sin(rotation);
-		speedX += deltaX;
-		speedY += deltaY;
+		double speedX = getSpeedX() + deltaX;
+		double speedY = getSpeedY() + deltaY;
 		if (Math.sqrt(speedX*speedX + speedY*speedY) > SPEED_LIMIT) {
 			speedX -= deltaX;
 			speedY -= deltaY;
 		}
+		setSpeed(speedX, speedY);
 	}
 	
 	
@@ -95,16 +289,26 @@ abstract public class Participant {
 	 * direction of motion.
 	 */
 	public void friction () {
+		friction(FRICTION);
+	}
+	
+	
+	/**
+	 * Accelerates the participant by the given friction opposite to its
+	 * direction of motion, or stops it if that would reverse it
+	 */
+	private void friction (double friction) {
+		double speedX = getSpeedX();
+		double speedY = getSpeedY();
 		if (speedX != 0 || speedY != 0) {
-			double deltaX = FRICTION * speedX / Math.sqrt(speedX*speedX + speedY*speedY);
-			double deltaY = FRICTION * speedY / Math.sqrt(speedX*speedX + speedY*speedY);
+			double speed = Math.sqrt(speedX*speedX + speedY*speedY);
+			double deltaX = friction * speedX / speed;
+			double deltaY = friction * speedY / speed;
 			if (Math.abs(deltaX) > Math.abs(speedX) || Math.abs(deltaY) > Math.abs(speedY)) {
-				speedX = 0;
-				speedY = 0;
+				setSpeed(0, 0);
 			}
 			else {
-				speedX += deltaX;
-				speedY += deltaY;
+				setSpeed(speedX + deltaX, speedY + deltaY);
 			}
 		}
 	}
@@ -114,8 +318,15 @@ abstract public class Participant {
 	 * Sets the position of the center of the participant
 	 */
 	public void setPosition (double x, double y) {
-		this.x = x;
-		this.y = y;
+		if (store != null) {
+			int i = store.indexOf(handle);
+			store.x[i] = x;
+			store.y[i] = y;
+		}
+		else {
+			this.x = x;
+			this.y = y;
+		}
 	}
 	
 	
@@ -123,6 +334,9 @@ abstract public class Participant {
 	 * Gets the x coordinate of the center of the participant
 	 */
 	public double getX () {
+		if (store != null) {
+			return store.x[store.indexOf(handle)];
+		}
 		return x;
 	}
 	
@@ -131,10 +345,51 @@ abstract public class Participant {
 	 * Gets the y coordinate of the center of the participant
 	 */
 	public double getY () {
+		if (store != null) {
+			return store.y[store.indexOf(handle)];
+		}
 		return y;
 	}
 	
 	
+	/**
+	 * Gets the horizontal component of the participant's velocity
+	 */
+	double getSpeedX () {
+		if (store != null) {
+			return store.speedX[store.indexOf(handle)];
+		}
+		return speedX;
+	}
+	
+	
+	/**
+	 * Gets the vertical component of the participant's velocity
+	 */
+	double getSpeedY () {
+		if (store != null) {
+			return store.speedY[store.indexOf(handle)];
+		}
+		return speedY;
+	}
+	
+	
+	/**
+	 * Sets the two components of the participant's velocity directly
+	 */
+	private void setSpeed (double speedX, double speedY) {
+		if (store != null) {
+			int i = store.indexOf(handle);
+			store.speedX[i] = speedX;
+			store.speedY[i] = speedY;
+		}
+		else {
+			this.speedX = speedX;
+			this.speedY = speedY;
+		}
+	}
+	
+	
 	/**
 	 * This should be overridden by any derived class to return a Shape object that
 	 * describes the outline of the participant.  The center of the Shape should be
@@ -146,25 +401,30 @@ abstract public class Participant {
 
 	
 	/**
-	 * Moves this participant to reflect one tick of the clock.
+	 * Returns the friction (like FRICTION, which is negative) that slows this
+	 * participant down on every move, or 0 if it keeps its speed
+	 */
+	double getFriction () {
+		return 0;
+	}
+	
+	
+	/**
+	 * Moves this participant to reflect one tick of the clock.  The points of
+	 * the outline are transformed into buffers that are kept from one move to
+	 * the next, so moving allocates nothing.  A world moves the participants
+	 * in its store all together instead, with the loops in Kinematics and
+	 * place, which comes out the same.
 	 */
 	public void move () {
 		
-		// Get the original outline
-		Shape original = getOutline();
-		
 		// Change the position to reflect participant motion
-		x += speedX;
-		y += speedY;
-		
-		// Translate and rotate the original to reflect the accumulated motion
-		AffineTransform trans = AffineTransform.getTranslateInstance(x,y);
-		trans.concatenate(AffineTransform.getRotateInstance(rotation));
-		border = trans.createTransformedShape(original);
+		double x = getX() + getSpeedX();
+		double y = getY() + getSpeedY();
+		place(x, y);
 		
 		// If the element has gone sufficiently far out of bounds, move it to the 
 		// other side of the screen.  This change will take effect next time.
-		Rectangle2D bounds = border.getBounds2D();
 		if (bounds.getMaxX() < 0) {
 			x += SIZE + (bounds.getMaxX() - bounds.getMinX());
 		}
@@ -177,7 +437,82 @@ abstract public class Participant {
 		if (bounds.getMinY() >= SIZE) {
 			y += -SIZE - (bounds.getMaxY() - bounds.getMinY());
 		}
+		setPosition(x, y);
 		
+		// Slow down
+		double friction = getFriction();
+		if (friction != 0) {
+			friction(friction);
+		}
+	}
+	
+	
+	/**
+	 * Places the border, as a move does: the outline is rotated by the
+	 * current rotation and translated to (x,y), and its bounding box is
+	 * found.  This doesn't change the position.
+	 */
+	void place (double x, double y) {
+		double rotation = getRotation();
+		
+		// Translate and rotate the outline to reflect the accumulated motion
+		CollisionShape shape = getCollisionShape();
+		if (borderPoints == null || borderPoints.length < shape.getPointArraySize()) {
+			borderPoints = new double[shape.getPointArraySize()];
+		}
+		updateTrig(rotation);
+		shape.transformOutline(trigCos, trigSin, x, y, borderPoints, bounds);
+		borderX = x;
+		borderY = y;
+		borderRotation = rotation;
+		borderCos = trigCos;
+		borderSin = trigSin;
+		worldCurrent = false;
+		moved = true;
+	}
+	
+	
+	/**
+	 * Returns the x coordinate at which the participant was placed by its
+	 * last move.  (This can differ from getX if it then wrapped around.)
+	 */
+	double getBorderX () {
+		return borderX;
+	}
+	
+	
+	/**
+	 * Returns the y coordinate at which the participant was placed by its
+	 * last move.
+	 */
+	double getBorderY () {
+		return borderY;
+	}
+	
+	
+	/**
+	 * Returns the rotation of the participant as of its last move
+	 */
+	double getBorderRotation () {
+		return borderRotation;
+	}
+	
+	
+	/**
+	 * Returns the handle of the participant in the store that holds it, or
+	 * -1 if it isn't in one.
+	 */
+	int getHandle () {
+		return handle;
+	}
+	
+	
+	/**
+	 * Returns the bounding box of the participant as of the last move, or
+	 * null if it has never been moved.
+	 */
+	Rectangle2D getBounds () {
+		return moved ? bounds : null;
 	}
 	
 	
@@ -188,19 +523,134 @@ abstract public class Participant {
 	 * be useful for computing the tip of a ship, for example.)
 	 */
 	public void transformPoint (Point2D.Double point) {	
-		AffineTransform trans = AffineTransform.getTranslateInstance(x,y);
-		trans.concatenate(AffineTransform.getRotateInstance(rotation));
-		trans.transform(point, point);		
+		double px = point.x;
+		double py = point.y;
+		point.x = transformX(px, py);
+		point.y = transformY(px, py);
+	}
+	
+	
+	/**
+	 * Returns the x coordinate of the point (px,py) of the outline once it is
+	 * transformed to where the participant is now.  Unlike transformPoint,
+	 * this needs no Point2D.
+	 */
+	public double transformX (double px, double py) {
+		updateTrig(getRotation());
+		return px*trigCos - py*trigSin + getX();
+	}
+	
+	
+	/**
+	 * Returns the y coordinate of the point (px,py) of the outline once it is
+	 * transformed to where the participant is now.
+	 */
+	public double transformY (double px, double py) {
+		updateTrig(getRotation());
+		return px*trigSin + py*trigCos + getY();
+	}
+	
+	
+	/**
+	 * Makes trigCos and trigSin the cosine and sine of the rotation, working
+	 * them out only if the rotation has changed since they were last needed.
+	 * Like AffineTransform, angles that are exact quarter turns get exact
+	 * values, so results match what the transform would produce.
+	 */
+	private void updateTrig (double rotation) {
+		if (trigCurrent && rotation == trigRotation) {
+			return;
+		}
+		double sin = Math.sin(rotation);
+		double cos = Math.cos(rotation);
+		if (sin == 1.0 || sin == -1.0) {
+			cos = 0.0;
+		}
+		else if (cos == 1.0 || cos == -1.0) {
+			sin = 0.0;
+		}
+		trigRotation = rotation;
+		trigCos = cos;
+		trigSin = sin;
+		trigCurrent = true;
 	}
 		
 	
 	/**
-	 * Reports whether this participant overlaps with p.
+	 * Reports whether this participant overlaps with p.  The cheap tests come
+	 * first: participants whose bounding circles or bounding boxes are apart
+	 * cannot overlap.  Only then are the convex pieces of the two outlines
+	 * compared.
 	 */
 	public boolean overlaps (Participant p) {
-		Area a = new Area(border);
-		a.intersect(new Area(p.border));
-		return !a.isEmpty();
+		if (!moved || !p.moved) {
+			return false;
+		}
+		
+		// Bounding circles
+		CollisionShape shape = getCollisionShape();
+		CollisionShape other = p.getCollisionShape();
+		double dx = p.borderX - borderX;
+		double dy = p.borderY - borderY;
+		double reach = shape.getRadius() + other.getRadius();
+		if (dx*dx + dy*dy >= reach*reach) {
+			return false;
+		}
+		
+		// Bounding boxes
+		if (bounds.getMaxX() <= p.bounds.getMinX() || p.bounds.getMaxX() <= bounds.getMinX() ||
+			bounds.getMaxY() <= p.bounds.getMinY() || p.bounds.getMaxY() <= bounds.getMinY()) {
+			return false;
+		}
+		
+		// Convex pieces
+		updateWorldPieces();
+		p.updateWorldPieces();
+		return CollisionShape.overlaps(shape, worldVertices, worldBoxes, other, p.worldVertices, p.worldBoxes);
+	}
+	
+	
+	/**
+	 * Returns the collision shape that matches the current outline
+	 */
+	CollisionShape getCollisionShape () {
+		Shape outline = getOutline();
+		if (outline != collisionOutline) {
+			collisionOutline = outline;
+			collisionShape = CollisionShape.forOutline(outline);
+			worldCurrent = false;
+		}
+		return collisionShape;
+	}
+	
+	
+	/**
+	 * Gets everything that overlaps needs ready ahead of time, so that overlaps
+	 * changes nothing and can be called from several threads at once.
+	 */
+	void prepareForCollisions () {
+		if (moved) {
+			updateWorldPieces();
+		}
+	}
+	
+	
+	/**
+	 * Transforms the pieces of the collision shape to match the border, if
+	 * that hasn't already been done since the last move.
+	 */
+	private void updateWorldPieces () {
+		if (worldCurrent) {
+			return;
+		}
+		CollisionShape shape = getCollisionShape();
+		if (worldVertices == null || worldVertices.length < shape.getVertexArraySize() ||
+			worldBoxes.length < shape.getBoxArraySize()) {
+			worldVertices = new double[shape.getVertexArraySize()];
+			worldBoxes = new double[shape.getBoxArraySize()];
+		}
+		shape.transform(borderCos, borderSin, borderX, borderY, worldVertices, worldBoxes);
+		worldCurrent = true;
 	}
 	
 	
@@ -209,9 +659,14 @@ abstract public class Participant {
 	 */
 	public void draw (Graphics2D g) {
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		if (border == null) {
-			border = getOutline();
+		if (!moved) {
+			g.draw(getOutline());
+			return;
 		}
-		g.draw(border);
+		AffineTransform saved = g.getTransform();
+		g.translate(borderX, borderY);
+		g.rotate(borderRotation);
+		g.draw(getOutline());
+		g.setTransform(saved);
 	}
 }
@@ -0,0 +1,106 @@
+package asteroids;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps participants of one kind that are no longer on the screen so that
+ * they can be reused instead of being created from scratch.  A participant
+ * obtained from a pool is returned to it automatically when the screen
+ * removes it.  The pool counts how many requests it was able to satisfy
+ * with a recycled participant (hits) and how many needed a new one (misses).
+ */
+abstract class ParticipantPool<T extends Participant> {
+
+	// Participants that are ready to be reused
+	private ArrayList<T> free;
+
+	// Number of requests satisfied from free, and number that weren't
+	private long hits, misses;
+
+
+	/**
+	 * Creates an empty pool
+	 */
+	public ParticipantPool () {
+		free = new ArrayList<T>();
+		hits = 0;
+		misses = 0;
+	}
+
+
+	/**
+	 * Creates a new participant for the pool.  It will be reset before it is
+	 * handed out.
+	 */
+	protected abstract T create ();
+
+
+	/**
+	 * Returns a participant that is not on any screen, at rest at the origin
+	 * with no rotation.
+	 */
+	public T acquire () {
+		T p;
+		if (free.isEmpty()) {
+			misses++;
+			p = create();
+		}
+		else {
+			hits++;
+			p = free.remove(free.size() - 1);
+		}
+		p.reuse(this);
+		return p;
+	}
+
+
+	/**
+	 * Returns a participant to the pool.  This is called by the participant
+	 * itself once it has been taken off the screen.
+	 */
+	@SuppressWarnings("unchecked")
+	void release (Participant p) {
+		free.add((T) p);
+	}
+
+
+	/**
+	 * Returns the participant at position i of those waiting to be reused.
+	 * The last one is the next to be handed out.
+	 */
+	T getFree (int i) {
+		return free.get(i);
+	}
+
+
+	/**
+	 * Forgets every participant waiting to be reused
+	 */
+	void clearFree () {
+		free.clear();
+	}
+
+
+	/**
+	 * Returns the number of participants that were reused
+	 */
+	public long getHits () {
+		return hits;
+	}
+
+
+	/**
+	 * Returns the number of participants that had to be created
+	 */
+	public long getMisses () {
+		return misses;
+	}
+
+
+	/**
+	 * Returns the number of participants waiting to be reused
+	 */
+	public int getFreeCount () {
+		return free.size();
+	}
+}
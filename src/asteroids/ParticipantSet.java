@@ -0,0 +1,83 @@
+package asteroids;
+
+import java.util.Arrays;
+
+/**
+ * A set of participants that remembers the order in which they were added,
+ * and that never allocates once it has grown large enough.  Membership is
+ * recorded on the participants themselves, as a bit in a field set aside
+ * for the purpose, so each set needs its own bit and a participant can be
+ * in the sets of only one world at a time.
+ */
+class ParticipantSet {
+
+	// The bit that marks the members of this set
+	private final int bit;
+
+	// The members in the order in which they were added, and how many
+	private Participant[] members;
+	private int size;
+
+
+	/**
+	 * Creates an empty set whose members are marked with the given bit
+	 */
+	public ParticipantSet (int bit) {
+		this.bit = bit;
+		members = new Participant[16];
+		size = 0;
+	}
+
+
+	/**
+	 * Adds the participant to the end of the set if it isn't already a
+	 * member, and reports whether it was added
+	 */
+	public boolean add (Participant p) {
+		if ((p.setMarks & bit) != 0) {
+			return false;
+		}
+		if (size == members.length) {
+			members = Arrays.copyOf(members, 2 * size);
+		}
+		p.setMarks |= bit;
+		members[size++] = p;
+		return true;
+	}
+
+
+	/**
+	 * Reports whether the participant is a member
+	 */
+	public boolean contains (Participant p) {
+		return (p.setMarks & bit) != 0;
+	}
+
+
+	/**
+	 * Returns the number of members
+	 */
+	public int size () {
+		return size;
+	}
+
+
+	/**
+	 * Returns the member that was added ith
+	 */
+	public Participant get (int i) {
+		return members[i];
+	}
+
+
+	/**
+	 * Removes every member
+	 */
+	public void clear () {
+		for (int i = 0; i < size; i++) {
+			members[i].setMarks &= ~bit;
+			members[i] = null;
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,275 @@
+package asteroids;
+
+import java.util.Arrays;
+
+/**
+ * Holds the motion state of the participants on a screen in parallel
+ * primitive arrays.  The arrays are kept dense: entries 0 through size()-1
+ * are in use, and removing a participant moves the last entry into the
+ * hole that it leaves.  Because entries move, participants refer to their
+ * entries through handles.  A handle combines a slot number, which never
+ * changes while the participant is in the store, with the generation of
+ * that slot, which changes whenever the slot is freed.  A handle that
+ * outlives its participant's stay in the store is therefore detected
+ * instead of silently referring to some other participant.
+ */
+class ParticipantStore {
+
+	/**
+	 * Type tags for the different kinds of participants.  Debris and ship
+	 * debris are only ever particles, which are tagged the same way.
+	 */
+	public final static int OTHER = 0;
+	public final static int ASTEROID = 1;
+	public final static int SHIP = 2;
+	public final static int BULLET = 3;
+	public final static int DEBRIS = 4;
+	public final static int SHIP_DEBRIS = 5;
+
+	/**
+	 * Number of type tags
+	 */
+	public final static int TYPE_COUNT = 6;
+
+	/**
+	 * Collision mask that accepts every layer
+	 */
+	public final static int ALL_LAYERS = -1;
+
+	// Number of bits of a handle used for the slot; the rest hold the generation
+	private final static int SLOT_BITS = 20;
+	private final static int SLOT_MASK = (1 << SLOT_BITS) - 1;
+	private final static int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+	// Motion state, indexed by position in the dense arrays
+	double[] x, y;
+	double[] speedX, speedY;
+	double[] rotation;
+	int[] type;
+
+	// The collision layer that each participant is on, and the layers it can
+	// collide with
+	int[] layer;
+	int[] mask;
+
+	// The friction that slows each participant on every move (0 for none)
+	double[] friction;
+
+	// Where each participant is moving to, and the bounding box of its
+	// outline there.  These are only used while participants are moved.
+	double[] nextX, nextY;
+	double[] minX, minY, maxX, maxY;
+
+	// The participant whose state is held at each position
+	private Participant[] owners;
+
+	// The slot that refers to each position
+	private int[] slotAt;
+
+	// For each slot, the position it refers to (or -1 if it is free) and its
+	// current generation
+	private int[] positionOf;
+	private int[] generation;
+
+	// Slots that are free to be reused
+	private int[] freeSlots;
+	private int freeCount;
+
+	// Number of slots that have ever been handed out
+	private int slotCount;
+
+	// Number of participants in the store
+	private int size;
+
+
+	/**
+	 * Creates an empty store
+	 */
+	public ParticipantStore () {
+		int capacity = 16;
+		x = new double[capacity];
+		y = new double[capacity];
+		speedX = new double[capacity];
+		speedY = new double[capacity];
+		rotation = new double[capacity];
+		type = new int[capacity];
+		layer = new int[capacity];
+		mask = new int[capacity];
+		friction = new double[capacity];
+		nextX = new double[capacity];
+		nextY = new double[capacity];
+		minX = new double[capacity];
+		minY = new double[capacity];
+		maxX = new double[capacity];
+		maxY = new double[capacity];
+		owners = new Participant[capacity];
+		slotAt = new int[capacity];
+		positionOf = new int[capacity];
+		generation = new int[capacity];
+		freeSlots = new int[capacity];
+		freeCount = 0;
+		slotCount = 0;
+		size = 0;
+	}
+
+
+	/**
+	 * Returns the number of participants in the store
+	 */
+	public int size () {
+		return size;
+	}
+
+
+	/**
+	 * Returns the participants in the store.  Only the first size() elements
+	 * are meaningful, and the array must not be modified.
+	 */
+	public Participant[] getOwners () {
+		return owners;
+	}
+
+
+	/**
+	 * Returns the collision layer used by participants of the given type
+	 */
+	public static int layerOf (int type) {
+		return 1 << type;
+	}
+
+
+	/**
+	 * Adds a participant with the given state, type, collision layer and
+	 * mask, and friction to the store and returns its handle.
+	 */
+	public int add (Participant p, double px, double py, double sx, double sy, double r, int t, int l, int m, double f) {
+		if (size == owners.length) {
+			grow();
+		}
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		}
+		else {
+			if (slotCount > SLOT_MASK) {
+				throw new IllegalStateException("Too many participants");
+			}
+			slot = slotCount++;
+		}
+		int i = size++;
+		x[i] = px;
+		y[i] = py;
+		speedX[i] = sx;
+		speedY[i] = sy;
+		rotation[i] = r;
+		type[i] = t;
+		layer[i] = l;
+		mask[i] = m;
+		friction[i] = f;
+		owners[i] = p;
+		slotAt[i] = slot;
+		positionOf[slot] = i;
+		return (generation[slot] << SLOT_BITS) | slot;
+	}
+
+
+	/**
+	 * Removes the participant with the given handle, moving the last
+	 * participant into its position.
+	 */
+	public void remove (int handle) {
+		int i = indexOf(handle);
+		int slot = handle & SLOT_MASK;
+		int last = --size;
+		if (i != last) {
+			x[i] = x[last];
+			y[i] = y[last];
+			speedX[i] = speedX[last];
+			speedY[i] = speedY[last];
+			rotation[i] = rotation[last];
+			type[i] = type[last];
+			layer[i] = layer[last];
+			mask[i] = mask[last];
+			friction[i] = friction[last];
+			owners[i] = owners[last];
+			slotAt[i] = slotAt[last];
+			positionOf[slotAt[i]] = i;
+		}
+		owners[last] = null;
+		positionOf[slot] = -1;
+		generation[slot] = (generation[slot] + 1) & GENERATION_MASK;
+		freeSlots[freeCount++] = slot;
+	}
+
+
+	/**
+	 * Removes every participant from the store.  Outstanding handles all
+	 * become invalid.
+	 */
+	public void clear () {
+		while (size > 0) {
+			remove((generation[slotAt[size-1]] << SLOT_BITS) | slotAt[size-1]);
+		}
+	}
+
+
+	/**
+	 * Reports whether the handle refers to a participant that is still in
+	 * the store.
+	 */
+	public boolean isValid (int handle) {
+		int slot = handle & SLOT_MASK;
+		return handle >= 0 && slot < slotCount && positionOf[slot] >= 0 &&
+			generation[slot] == (handle >>> SLOT_BITS);
+	}
+
+
+	/**
+	 * Returns the slot part of a handle.  Slots are small non-negative
+	 * integers that are reused once their participants leave the store.
+	 */
+	public static int slotOf (int handle) {
+		return handle & SLOT_MASK;
+	}
+
+
+	/**
+	 * Returns the position in the dense arrays of the participant with the
+	 * given handle.
+	 * @throws IllegalStateException if the handle is out of date
+	 */
+	public int indexOf (int handle) {
+		if (!isValid(handle)) {
+			throw new IllegalStateException("Stale participant handle " + handle);
+		}
+		return positionOf[handle & SLOT_MASK];
+	}
+
+
+	/**
+	 * Doubles the capacity of the store
+	 */
+	private void grow () {
+		int capacity = 2 * owners.length;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		speedX = Arrays.copyOf(speedX, capacity);
+		speedY = Arrays.copyOf(speedY, capacity);
+		rotation = Arrays.copyOf(rotation, capacity);
+		type = Arrays.copyOf(type, capacity);
+		layer = Arrays.copyOf(layer, capacity);
+		mask = Arrays.copyOf(mask, capacity);
+		friction = Arrays.copyOf(friction, capacity);
+		nextX = new double[capacity];
+		nextY = new double[capacity];
+		minX = new double[capacity];
+		minY = new double[capacity];
+		maxX = new double[capacity];
+		maxY = new double[capacity];
+		owners = Arrays.copyOf(owners, capacity);
+		slotAt = Arrays.copyOf(slotAt, capacity);
+		positionOf = Arrays.copyOf(positionOf, capacity);
+		generation = Arrays.copyOf(generation, capacity);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+	}
+}
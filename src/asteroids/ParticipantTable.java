@@ -0,0 +1,90 @@
+package asteroids;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Numbers the participants that make up the state of a game so that it can
+ * be written out and read back in.  The same participant can be on the
+ * screen, in a list of the controller's and the target of a timer all at
+ * once; each is written once, and everything that refers to it writes its
+ * number instead (or -1 for null).
+ */
+class ParticipantTable {
+
+	// The participants in the order they were numbered
+	private ArrayList<Participant> participants;
+
+	// The number of each participant (only kept while writing)
+	private IdentityHashMap<Participant, Integer> ids;
+
+
+	/**
+	 * Creates an empty table
+	 */
+	public ParticipantTable () {
+		participants = new ArrayList<Participant>();
+		ids = new IdentityHashMap<Participant, Integer>();
+	}
+
+
+	/**
+	 * Numbers the participant, unless it is null or already numbered
+	 */
+	public void add (Participant p) {
+		if (p != null && !ids.containsKey(p)) {
+			ids.put(p, participants.size());
+			participants.add(p);
+		}
+	}
+
+
+	/**
+	 * Returns the number of a participant that has been added, or -1 for null
+	 */
+	public int idOf (Participant p) {
+		return (p == null) ? -1 : ids.get(p);
+	}
+
+
+	/**
+	 * Returns the participant with the given number, or null for -1
+	 */
+	public Participant get (int id) {
+		return (id < 0) ? null : participants.get(id);
+	}
+
+
+	/**
+	 * Writes the type and state of every participant in the table
+	 */
+	public void write (DataOutput out) throws IOException {
+		out.writeInt(participants.size());
+		for (int i = 0; i < participants.size(); i++) {
+			Participant p = participants.get(i);
+			out.writeByte(p.getType());
+			p.writeState(out);
+		}
+	}
+
+
+	/**
+	 * Reads participants written by write, creating each one with the pool
+	 * for its type (which it goes back to later if it had been handed out)
+	 */
+	public void read (ByteBuffer in, ParticipantPool<?>[] pools) {
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			int type = in.get();
+			if (type < 0 || type >= pools.length || pools[type] == null) {
+				throw new IllegalStateException("Unknown participant type " + type);
+			}
+			Participant p = pools[type].create();
+			p.readState(in, pools[type]);
+			participants.add(p);
+		}
+	}
+}
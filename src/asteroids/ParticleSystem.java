@@ -0,0 +1,349 @@
+package asteroids;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static asteroids.Constants.*;
+
+/**
+ * Short-lived effects, such as the debris left behind when something is
+ * destroyed.  Particles only drift: they don't turn, they don't collide
+ * with anything, and they disappear after a fixed number of ticks.  They
+ * are therefore kept out of the participant store and the collision
+ * checks, in primitive arrays that are advanced all at once by each
+ * refresh.  Like the participant store, the arrays are kept dense by moving
+ * the last particle into the place of one that disappears.
+ */
+class ParticleSystem {
+
+	// Position each particle starts its next tick at
+	private double[] x, y;
+
+	// Velocity of each particle in pixels per tick
+	private double[] speedX, speedY;
+
+	// Where each particle was drawn by the latest tick, and by the tick
+	// before that (the two differ by a whole screen if it wrapped around)
+	private double[] drawnX, drawnY, previousX, previousY;
+
+	// Ticks left before each particle disappears
+	private int[] ticksLeft;
+
+	// Index of each particle's kind in the tables below
+	private int[] kind;
+
+	// The extent of each particle's outline left, right, above and below
+	// its center, copied from its kind so that the particles can be
+	// advanced without looking up their kinds
+	private double[] left, right, top, bottom;
+
+	// The kinds of particle that have been seen: the type tag, outline and
+	// collision shape (which holds the outline's points) of each, and the
+	// extent of the outline left, right, above and below its center
+	private ArrayList<Shape> kindOutlines;
+	private int[] kindTypes;
+	private CollisionShape[] kindShapes;
+	private double[] kindLeft, kindRight, kindTop, kindBottom;
+
+	// Number of particles
+	private int size;
+	
+	// The loops that advance the particles
+	private Kinematics kinematics;
+
+
+	/**
+	 * Creates a system with no particles
+	 */
+	public ParticleSystem () {
+		int capacity = 64;
+		x = new double[capacity];
+		y = new double[capacity];
+		speedX = new double[capacity];
+		speedY = new double[capacity];
+		drawnX = new double[capacity];
+		drawnY = new double[capacity];
+		previousX = new double[capacity];
+		previousY = new double[capacity];
+		ticksLeft = new int[capacity];
+		kind = new int[capacity];
+		left = new double[capacity];
+		right = new double[capacity];
+		top = new double[capacity];
+		bottom = new double[capacity];
+		kindOutlines = new ArrayList<Shape>();
+		kindTypes = new int[4];
+		kindShapes = new CollisionShape[4];
+		kindLeft = new double[4];
+		kindRight = new double[4];
+		kindTop = new double[4];
+		kindBottom = new double[4];
+		size = 0;
+		kinematics = Kinematics.preferred();
+	}
+
+
+	/**
+	 * Sets the loops that advance the particles.  The outcome is the same
+	 * whichever are used; only the speed differs.
+	 */
+	void setKinematics (Kinematics kinematics) {
+		this.kinematics = kinematics;
+	}
+
+
+	/**
+	 * Returns the number of particles
+	 */
+	public int size () {
+		return size;
+	}
+
+
+	/**
+	 * Removes every particle
+	 */
+	public void clear () {
+		size = 0;
+	}
+
+
+	/**
+	 * Adds a particle of the given type and outline at (px,py), moving at
+	 * the given speed (in pixels per tick) and direction (in radians), that
+	 * lasts the given number of ticks.
+	 */
+	public void emit (int type, Shape outline, double px, double py, double speed, double direction, int ticks) {
+		if (size == x.length) {
+			grow();
+		}
+		int i = size++;
+		x[i] = px;
+		y[i] = py;
+		speedX[i] = Math.cos(direction) * speed;
+		speedY[i] = Math.sin(direction) * speed;
+		drawnX[i] = previousX[i] = px;
+		drawnY[i] = previousY[i] = py;
+		ticksLeft[i] = ticks;
+		int k = kindOf(type, outline);
+		kind[i] = k;
+		left[i] = kindLeft[k];
+		right[i] = kindRight[k];
+		top[i] = kindTop[k];
+		bottom[i] = kindBottom[k];
+	}
+
+
+	/**
+	 * Advances every particle by one tick.  Particles whose time is up
+	 * disappear; the rest drift, wrapping around the screen once they have
+	 * gone entirely off it, just as participants do.  Every particle is
+	 * advanced by the loops in Kinematics before those whose time is up are
+	 * removed, which leaves the same particles in the same order as
+	 * advanceOneByOne.
+	 */
+	public void advance () {
+		kinematics.countDown(ticksLeft, 0, size);
+		kinematics.drift(x, speedX, drawnX, previousX, left, right, 0, size);
+		kinematics.drift(y, speedY, drawnY, previousY, top, bottom, 0, size);
+		int i = 0;
+		while (i < size) {
+			if (ticksLeft[i] <= 0) {
+				remove(i);
+			}
+			else {
+				i++;
+			}
+		}
+	}
+
+
+	/**
+	 * Does the same as advance, one particle at a time.  This is the
+	 * straightforward version that advance must agree with, and is kept to
+	 * compare the two.
+	 */
+	void advanceOneByOne () {
+		int i = 0;
+		while (i < size) {
+			if (--ticksLeft[i] <= 0) {
+				remove(i);
+				continue;
+			}
+			double px = x[i] + speedX[i];
+			double py = y[i] + speedY[i];
+			previousX[i] = drawnX[i];
+			previousY[i] = drawnY[i];
+			drawnX[i] = px;
+			drawnY[i] = py;
+			double width = right[i] - left[i];
+			double height = bottom[i] - top[i];
+			if (px + right[i] < 0) {
+				px += SIZE + width;
+			}
+			if (px + left[i] >= SIZE) {
+				px += -SIZE - width;
+			}
+			if (py + bottom[i] < 0) {
+				py += SIZE + height;
+			}
+			if (py + top[i] >= SIZE) {
+				py += -SIZE - height;
+			}
+			x[i] = px;
+			y[i] = py;
+			i++;
+		}
+	}
+
+
+	/**
+	 * Adds every particle to the frame
+	 */
+	public void publish (Frame frame) {
+		for (int i = 0; i < size; i++) {
+			int k = kind[i];
+			frame.addParticle(kindTypes[k], kindOutlines.get(k), kindShapes[k],
+				previousX[i], previousY[i], drawnX[i], drawnY[i]);
+		}
+	}
+
+
+	/**
+	 * Writes every particle.  Each particle's outline must be one of the
+	 * given outlines, and is written as its position in the array.
+	 */
+	void writeState (DataOutput out, Shape[] outlines) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			int k = kind[i];
+			int outline = 0;
+			while (outlines[outline] != kindOutlines.get(k)) {
+				outline++;
+			}
+			out.writeByte(kindTypes[k]);
+			out.writeByte(outline);
+			out.writeDouble(x[i]);
+			out.writeDouble(y[i]);
+			out.writeDouble(speedX[i]);
+			out.writeDouble(speedY[i]);
+			out.writeDouble(drawnX[i]);
+			out.writeDouble(drawnY[i]);
+			out.writeDouble(previousX[i]);
+			out.writeDouble(previousY[i]);
+			out.writeInt(ticksLeft[i]);
+		}
+	}
+
+
+	/**
+	 * Replaces every particle with those written by writeState, which was
+	 * given the same outlines
+	 */
+	void readState (ByteBuffer in, Shape[] outlines) {
+		int count = in.getInt();
+		size = 0;
+		for (int n = 0; n < count; n++) {
+			int type = in.get();
+			Shape outline = outlines[in.get()];
+			if (size == x.length) {
+				grow();
+			}
+			int i = size++;
+			x[i] = in.getDouble();
+			y[i] = in.getDouble();
+			speedX[i] = in.getDouble();
+			speedY[i] = in.getDouble();
+			drawnX[i] = in.getDouble();
+			drawnY[i] = in.getDouble();
+			previousX[i] = in.getDouble();
+			previousY[i] = in.getDouble();
+			ticksLeft[i] = in.getInt();
+			int k = kindOf(type, outline);
+			kind[i] = k;
+			left[i] = kindLeft[k];
+			right[i] = kindRight[k];
+			top[i] = kindTop[k];
+			bottom[i] = kindBottom[k];
+		}
+	}
+
+
+	/**
+	 * Returns the index of the kind of particle with the given type and
+	 * outline, adding it to the tables if it hasn't been seen before
+	 */
+	private int kindOf (int type, Shape outline) {
+		for (int k = 0; k < kindOutlines.size(); k++) {
+			if (kindOutlines.get(k) == outline && kindTypes[k] == type) {
+				return k;
+			}
+		}
+		int k = kindOutlines.size();
+		if (k == kindTypes.length) {
+			kindTypes = Arrays.copyOf(kindTypes, 2*k);
+			kindShapes = Arrays.copyOf(kindShapes, 2*k);
+			kindLeft = Arrays.copyOf(kindLeft, 2*k);
+			kindRight = Arrays.copyOf(kindRight, 2*k);
+			kindTop = Arrays.copyOf(kindTop, 2*k);
+			kindBottom = Arrays.copyOf(kindBottom, 2*k);
+		}
+		kindOutlines.add(outline);
+		kindTypes[k] = type;
+		kindShapes[k] = CollisionShape.forOutline(outline);
+		Rectangle2D bounds = outline.getBounds2D();
+		kindLeft[k] = bounds.getMinX();
+		kindRight[k] = bounds.getMaxX();
+		kindTop[k] = bounds.getMinY();
+		kindBottom[k] = bounds.getMaxY();
+		return k;
+	}
+
+
+	/**
+	 * Removes the particle at position i by moving the last one into its place
+	 */
+	private void remove (int i) {
+		int last = --size;
+		x[i] = x[last];
+		y[i] = y[last];
+		speedX[i] = speedX[last];
+		speedY[i] = speedY[last];
+		drawnX[i] = drawnX[last];
+		drawnY[i] = drawnY[last];
+		previousX[i] = previousX[last];
+		previousY[i] = previousY[last];
+		ticksLeft[i] = ticksLeft[last];
+		kind[i] = kind[last];
+		left[i] = left[last];
+		right[i] = right[last];
+		top[i] = top[last];
+		bottom[i] = bottom[last];
+	}
+
+
+	/**
+	 * Doubles the capacity of the system
+	 */
+	private void grow () {
+		int capacity = 2 * x.length;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		speedX = Arrays.copyOf(speedX, capacity);
+		speedY = Arrays.copyOf(speedY, capacity);
+		drawnX = Arrays.copyOf(drawnX, capacity);
+		drawnY = Arrays.copyOf(drawnY, capacity);
+		previousX = Arrays.copyOf(previousX, capacity);
+		previousY = Arrays.copyOf(previousY, capacity);
+		ticksLeft = Arrays.copyOf(ticksLeft, capacity);
+		kind = Arrays.copyOf(kind, capacity);
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+		top = Arrays.copyOf(top, capacity);
+		bottom = Arrays.copyOf(bottom, capacity);
+	}
+}
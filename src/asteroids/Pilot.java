@@ -0,0 +1,58 @@
+package asteroids;
+
+import java.util.Random;
+
+/**
+ * Flies the ship in games played without a display.  The pilot holds each
+ * combination of controls for a random number of ticks, letting go of fire
+ * every other tick so that it keeps shooting.  Pilots given the same seed
+ * fly the same way.
+ */
+class Pilot {
+
+	// Longest time, in ticks, that the pilot holds a combination of controls
+	private final static int MAX_HOLD = 30;
+
+	// Where the pilot's choices come from
+	private Random random;
+
+	// The controls being held down, and for how many more ticks
+	private int inputs;
+	private int hold;
+
+	// Number of ticks flown so far
+	private long ticks;
+
+
+	/**
+	 * Creates a pilot whose choices are seeded with the given seed
+	 */
+	public Pilot (long seed) {
+		random = new Random(seed);
+		inputs = 0;
+		hold = 0;
+		ticks = 0;
+	}
+
+
+	/**
+	 * Returns the controls (the LEFT, RIGHT, THRUST and FIRE bits of
+	 * Controller) to hold down during the next tick
+	 */
+	public int next () {
+		// Pick new controls when the old ones have been held long enough.
+		// Fire is let go every other tick so that it keeps shooting.
+		if (hold-- <= 0) {
+			inputs = random.nextInt(16);
+			hold = 1 + random.nextInt(MAX_HOLD);
+		}
+		else if ((inputs & Controller.FIRE) != 0 && (ticks & 1) == 0) {
+			inputs &= ~Controller.FIRE;
+		}
+		else if (hold % 2 == 0) {
+			inputs |= (random.nextInt(2) == 0) ? Controller.FIRE : 0;
+		}
+		ticks++;
+		return inputs;
+	}
+}
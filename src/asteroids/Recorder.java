@@ -0,0 +1,314 @@
+package asteroids;
+
+import java.awt.event.KeyEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes everything that a controller's game depends on to a stream, so
+ * that Replay can play the game again exactly, from the start or from any
+ * tick.  A game's random number generator is seeded and its ticks are
+ * driven by the simulation rather than by the clock, so all that is needed
+ * is the seed followed by the key events and new games that happened
+ * before each tick.  Every KEYFRAME_INTERVAL ticks the whole state of the
+ * game is written as well, so that playback can begin there instead of at
+ * the start.
+ * <p>
+ * A recording begins with MAGIC, VERSION, the seed and the keyframe
+ * interval, and then holds one byte for each of these, in the order they
+ * happened:
+ * <ul>
+ * <li>0 to MAX_RUN-1: that many ticks plus one, with nothing in between
+ * <li>KEY, plus DOWN if the key went down, plus one of the CONTROL_ values:
+ * a key going down or up.  Only changes to the keys are recorded, not which
+ * keys are held on each tick.
+ * <li>NEW_GAME: a new game being started
+ * <li>KEYFRAME: followed by the length of the state and the state written
+ * by Controller.writeState
+ * </ul>
+ * A tick in which nothing happens costs at most a byte, and a long
+ * stretch of them costs one byte per MAX_RUN ticks.  When the recording is
+ * closed, an index follows: for each keyframe, the tick after which it was
+ * taken and where it starts, then the number of keyframes, the number of
+ * ticks, where the index starts and INDEX_MAGIC.  A recording that was
+ * never closed has no index, but can still be played.
+ */
+public class Recorder {
+
+	/**
+	 * The first bytes of every recording ("ASTR") and the version of the
+	 * format that follows them
+	 */
+	public final static int MAGIC = 0x41535452;
+	public final static int VERSION = 2;
+
+	/**
+	 * The last bytes of a recording that has an index ("ASTI")
+	 */
+	public final static int INDEX_MAGIC = 0x41535449;
+
+	/**
+	 * Bytes in the header and in the end of the index
+	 */
+	public final static int HEADER_SIZE = 20;
+	public final static int TRAILER_SIZE = 24;
+
+	/**
+	 * Number of ticks between keyframes (about ten seconds of play)
+	 */
+	public final static int KEYFRAME_INTERVAL = 300;
+
+	// Longest a recording can grow before recording stops.  This leaves room
+	// for the index within what Replay can map.
+	private final static int MAX_SIZE = 1 << 30;
+
+	/**
+	 * The most ticks recorded in one byte
+	 */
+	public final static int MAX_RUN = 128;
+
+	/**
+	 * The byte values for key events, new games and keyframes
+	 */
+	public final static int KEY = 0x80;
+	public final static int DOWN = 0x08;
+	public final static int NEW_GAME = 0xC0;
+	public final static int KEYFRAME = 0xD0;
+
+	/**
+	 * The keys that matter to the game.  Every other key is recorded as
+	 * CONTROL_OTHER, since they all have the same effect.
+	 */
+	public final static int CONTROL_LEFT = 0;
+	public final static int CONTROL_RIGHT = 1;
+	public final static int CONTROL_UP = 2;
+	public final static int CONTROL_SPACE = 3;
+	public final static int CONTROL_OTHER = 4;
+
+	// The key code that each control is replayed as
+	private final static int[] CODES = {
+		KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_SPACE, KeyEvent.VK_UNDEFINED
+	};
+
+	// The controller whose game is recorded
+	private Controller controller;
+
+	// Where the recording is written, or null once it has been closed or
+	// has failed
+	private DataOutputStream out;
+
+	// Number of ticks that have happened since the last byte was written,
+	// and altogether
+	private int run;
+	private long ticks;
+
+	// Where the state for a keyframe is put together, so that its length
+	// can be written ahead of it
+	private ByteArrayOutputStream state;
+	private DataOutputStream stateOut;
+
+	// The tick and position of each keyframe
+	private long[] keyframeTicks;
+	private long[] keyframePositions;
+	private int keyframeCount;
+
+
+	/**
+	 * Begins a recording of the controller's game, writing it to the stream.
+	 * This must be done before the controller's first tick, and the
+	 * controller must then be given the recorder.
+	 */
+	public Recorder (OutputStream stream, Controller controller) throws IOException {
+		this.controller = controller;
+		out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(controller.getSeed());
+		out.writeInt(KEYFRAME_INTERVAL);
+		run = 0;
+		ticks = 0;
+		state = new ByteArrayOutputStream();
+		stateOut = new DataOutputStream(state);
+		keyframeTicks = new long[16];
+		keyframePositions = new long[16];
+		keyframeCount = 0;
+	}
+
+
+	/**
+	 * Begins a recording of the controller's game, writing it to the named
+	 * file
+	 */
+	public Recorder (String filename, Controller controller) throws IOException {
+		this(new FileOutputStream(filename), controller);
+	}
+
+
+	/**
+	 * Returns the control that a key code is recorded as
+	 */
+	public static int controlOf (int code) {
+		for (int c = 0; c < CONTROL_OTHER; c++) {
+			if (CODES[c] == code) {
+				return c;
+			}
+		}
+		return CONTROL_OTHER;
+	}
+
+
+	/**
+	 * Returns the key code that a control is replayed as
+	 */
+	public static int codeOf (int control) {
+		return CODES[control];
+	}
+
+
+	/**
+	 * Records a key going down or up before the next tick.  Other keys
+	 * going down have no effect on the game, so they aren't recorded.
+	 */
+	public synchronized void keyChanged (int code, boolean down) {
+		int control = controlOf(code);
+		if (down && control == CONTROL_OTHER) {
+			return;
+		}
+		write(KEY | (down ? DOWN : 0) | control);
+	}
+
+
+	/**
+	 * Records a new game being started before the next tick
+	 */
+	public synchronized void newGame () {
+		write(NEW_GAME);
+	}
+
+
+	/**
+	 * Records a tick, which has just finished, and writes a keyframe if one
+	 * is due
+	 */
+	public synchronized void tick () {
+		run++;
+		ticks++;
+		if (ticks % KEYFRAME_INTERVAL == 0) {
+			keyframe();
+		}
+		else if (run == MAX_RUN) {
+			write(-1);
+		}
+	}
+
+
+	/**
+	 * Finishes the recording, writes the index and closes the stream.
+	 * Nothing more is recorded after this.
+	 */
+	public synchronized void close () {
+		write(-1);
+		if (out == null) {
+			return;
+		}
+		try {
+			long index = out.size();
+			for (int k = 0; k < keyframeCount; k++) {
+				out.writeLong(keyframeTicks[k]);
+				out.writeLong(keyframePositions[k]);
+			}
+			out.writeInt(keyframeCount);
+			out.writeLong(ticks);
+			out.writeLong(index);
+			out.writeInt(INDEX_MAGIC);
+			out.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+
+
+	/**
+	 * Writes the state of the game as a keyframe and adds it to the index
+	 */
+	private void keyframe () {
+		write(-1);
+		if (out == null) {
+			return;
+		}
+		try {
+			state.reset();
+			controller.writeState(stateOut);
+			if (keyframeCount == keyframeTicks.length) {
+				keyframeTicks = Arrays.copyOf(keyframeTicks, 2 * keyframeCount);
+				keyframePositions = Arrays.copyOf(keyframePositions, 2 * keyframeCount);
+			}
+			keyframeTicks[keyframeCount] = ticks;
+			keyframePositions[keyframeCount] = out.size();
+			keyframeCount++;
+			out.write(KEYFRAME);
+			out.writeInt(state.size());
+			state.writeTo(out);
+			checkSize();
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+	}
+
+
+	/**
+	 * Writes out the ticks that have happened since the last byte and then
+	 * the given byte, unless it is -1.  If the stream fails, the problem is
+	 * reported and recording stops.
+	 */
+	private void write (int b) {
+		if (out == null) {
+			return;
+		}
+		try {
+			if (run > 0) {
+				out.write(run - 1);
+				run = 0;
+			}
+			if (b >= 0) {
+				out.write(b);
+			}
+			checkSize();
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+	}
+
+
+	/**
+	 * Stops recording once the recording is as long as it can be
+	 */
+	private void checkSize () throws IOException {
+		if (out.size() >= MAX_SIZE) {
+			throw new IOException("Recording is too long");
+		}
+	}
+
+
+	/**
+	 * Reports a problem with the stream and stops recording
+	 */
+	private void fail (IOException e) {
+		e.printStackTrace();
+		try {
+			out.close();
+		}
+		catch (IOException ignored) {
+		}
+		out = null;
+	}
+}
@@ -0,0 +1,275 @@
+package asteroids;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Plays back a game written by a Recorder.  The game is run headless, with
+ * no display, sound or timers, as fast as the processor allows, and ends
+ * up in exactly the same state as the game that was recorded.  That makes
+ * a recording both a way to reproduce a problem seen while playing and a
+ * benchmark made from a real session.
+ * <p>
+ * The recording is memory-mapped rather than read in, so only the parts
+ * that are played are loaded.  Playback can also begin at any tick: the
+ * game is restored from the nearest keyframe before it, found in the
+ * recording's index, and played on from there, which takes at most
+ * KEYFRAME_INTERVAL ticks however long the recording is.
+ * <p>
+ * Usage: java asteroids.Replay recording [runs] [-seek tick]
+ * <p>
+ * Each run replays the whole recording from the start, or seeks to the
+ * given tick, and reports how long it took and the state the game ended
+ * up in, which is the same every time.
+ */
+public class Replay {
+
+	// The recording
+	private MappedByteBuffer buffer;
+
+	// The seed of the recorded game's random number generator
+	private long seed;
+
+	// Where the recorded events end (which is where the index begins, if
+	// there is one)
+	private int end;
+
+	// Number of ticks in the recording
+	private long tickCount;
+
+	// The tick after which each keyframe was taken, and where it starts
+	private long[] keyframeTicks;
+	private int[] keyframePositions;
+
+
+	/**
+	 * Opens the recording in the file
+	 */
+	public Replay (File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too long");
+			}
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+		if (buffer.limit() < Recorder.HEADER_SIZE || buffer.getInt(0) != Recorder.MAGIC) {
+			throw new IOException(file + " is not a recording");
+		}
+		int version = buffer.getInt(4);
+		if (version != Recorder.VERSION) {
+			throw new IOException(file + " has unknown version " + version);
+		}
+		seed = buffer.getLong(8);
+
+		int limit = buffer.limit();
+		if (limit >= Recorder.HEADER_SIZE + Recorder.TRAILER_SIZE &&
+				buffer.getInt(limit - 4) == Recorder.INDEX_MAGIC) {
+			readIndex();
+		}
+		else {
+			scan();
+		}
+	}
+
+
+	/**
+	 * Reads the index at the end of a recording that was closed
+	 */
+	private void readIndex () {
+		int trailer = buffer.limit() - Recorder.TRAILER_SIZE;
+		int count = buffer.getInt(trailer);
+		tickCount = buffer.getLong(trailer + 4);
+		end = (int) buffer.getLong(trailer + 12);
+		keyframeTicks = new long[count];
+		keyframePositions = new int[count];
+		for (int k = 0; k < count; k++) {
+			keyframeTicks[k] = buffer.getLong(end + 16*k);
+			keyframePositions[k] = (int) buffer.getLong(end + 16*k + 8);
+		}
+	}
+
+
+	/**
+	 * Builds the index of a recording that was never closed by reading it
+	 * through, skipping over the keyframes.  A keyframe that was cut off
+	 * ends the recording.
+	 */
+	private void scan () {
+		int limit = buffer.limit();
+		int count = 0;
+		keyframeTicks = new long[16];
+		keyframePositions = new int[16];
+		tickCount = 0;
+		end = Recorder.HEADER_SIZE;
+		while (end < limit) {
+			int b = buffer.get(end) & 0xFF;
+			if (b < Recorder.MAX_RUN) {
+				tickCount += b + 1;
+			}
+			else if (b == Recorder.KEYFRAME) {
+				if (end + 5 > limit || end + 5 + buffer.getInt(end + 1) > limit) {
+					break;
+				}
+				if (count == keyframeTicks.length) {
+					keyframeTicks = Arrays.copyOf(keyframeTicks, 2 * count);
+					keyframePositions = Arrays.copyOf(keyframePositions, 2 * count);
+				}
+				keyframeTicks[count] = tickCount;
+				keyframePositions[count] = end;
+				count++;
+				end += 4 + buffer.getInt(end + 1);
+			}
+			end++;
+		}
+		keyframeTicks = Arrays.copyOf(keyframeTicks, count);
+		keyframePositions = Arrays.copyOf(keyframePositions, count);
+	}
+
+
+	/**
+	 * Returns the seed of the recorded game's random number generator
+	 */
+	public long getSeed () {
+		return seed;
+	}
+
+
+	/**
+	 * Returns the number of ticks in the recording
+	 */
+	public long getTickCount () {
+		return tickCount;
+	}
+
+
+	/**
+	 * Returns the number of keyframes in the recording
+	 */
+	public int getKeyframeCount () {
+		return keyframeTicks.length;
+	}
+
+
+	/**
+	 * Plays the whole recording back through a new controller in a new
+	 * world, which are returned once every recorded tick has been run
+	 */
+	public Controller play () {
+		Controller controller = new Controller(new World(), seed);
+		play(controller, Recorder.HEADER_SIZE, tickCount);
+		return controller;
+	}
+
+
+	/**
+	 * Returns a new controller, in a new world, whose game is in the state
+	 * the recorded game was in after the given number of ticks (and before
+	 * anything that happened ahead of the next one).  The game is restored
+	 * from the last keyframe at or before that tick and played on from there.
+	 */
+	public Controller seek (long tick) {
+		if (tick < 0 || tick > tickCount) {
+			throw new IllegalArgumentException("Tick " + tick + " is not in the recording");
+		}
+		Controller controller = new Controller(new World(), seed);
+		long ticks = 0;
+		int position = Recorder.HEADER_SIZE;
+		int k = Arrays.binarySearch(keyframeTicks, tick);
+		if (k < 0) {
+			k = -k - 2;
+		}
+		if (k >= 0) {
+			int start = keyframePositions[k];
+			int length = buffer.getInt(start + 1);
+			ByteBuffer state = buffer.duplicate();
+			state.position(start + 5);
+			state.limit(start + 5 + length);
+			controller.readState(state);
+			ticks = keyframeTicks[k];
+			position = start + 5 + length;
+		}
+		play(controller, position, tick - ticks);
+		return controller;
+	}
+
+
+	/**
+	 * Plays the recording through the controller from the given position
+	 * until the given number of ticks have been run
+	 */
+	private void play (Controller controller, int position, long ticks) {
+		while (ticks > 0 && position < end) {
+			int b = buffer.get(position) & 0xFF;
+			if (b < Recorder.MAX_RUN) {
+				int run = (int) Math.min(b + 1, ticks);
+				for (int t = 0; t < run; t++) {
+					controller.tick();
+				}
+				ticks -= run;
+			}
+			else if (b == Recorder.NEW_GAME) {
+				controller.newGame();
+			}
+			else if (b == Recorder.KEYFRAME) {
+				position += 4 + buffer.getInt(position + 1);
+			}
+			else {
+				int control = b & ~(Recorder.KEY | Recorder.DOWN);
+				controller.keyChanged(Recorder.codeOf(control), (b & Recorder.DOWN) != 0);
+			}
+			position++;
+		}
+	}
+
+
+	/**
+	 * Replays a recording
+	 */
+	public static void main (String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: java asteroids.Replay recording [runs] [-seek tick]");
+			return;
+		}
+		long opened = System.nanoTime();
+		Replay replay = new Replay(new File(args[0]));
+		double openSeconds = (System.nanoTime() - opened) / 1e9;
+		int runs = 1;
+		long tick = -1;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-seek")) {
+				tick = Long.parseLong(args[++i]);
+			}
+			else {
+				runs = Integer.parseInt(args[i]);
+			}
+		}
+		System.out.println("Recording:    " + replay.getTickCount() + " ticks, " +
+			replay.getKeyframeCount() + " keyframes, opened in " + openSeconds + " seconds");
+
+		for (int r = 0; r < runs; r++) {
+			long start = System.nanoTime();
+			Controller controller = (tick < 0) ? replay.play() : replay.seek(tick);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			long ticks = (tick < 0) ? replay.getTickCount() : tick;
+			System.out.println("Ticks:        " + ticks);
+			System.out.println("Seconds:      " + seconds);
+			if (tick < 0) {
+				System.out.println("Ticks/second: " + (long) (ticks / seconds));
+			}
+			System.out.println("Score:        " + controller.getScore());
+			System.out.println("Lives:        " + controller.getLives());
+			System.out.println("Level:        " + controller.getLevel());
+			System.out.println("Participants: " + controller.getWorld().getParticipantCount());
+			System.out.println("Checksum:     " + Long.toHexString(controller.getWorld().getChecksum()));
+		}
+	}
+}
@@ -1,172 +1,445 @@
 package asteroids;
 
 import java.awt.*;
-import java.util.*;
+import java.awt.event.*;
+import java.awt.geom.*;
+import java.util.List;
 import javax.swing.*;
 import static asteroids.Constants.*;
 
 /**
- * The area in which the game takes place.
+ * The area in which the game takes place.  The game itself is a World,
+ * which is advanced by the simulation thread and publishes a frame that
+ * records what is to be drawn after each refresh.  Painting, which happens
+ * on the event dispatch thread at the display's pace, draws the
+ * participants part way between the last two published frames according
+ * to how much time has passed since the latest one.  The rendering state
+ * is set up once per paint and the participants of each type are gathered
+ * into one path that is stroked in a single call.  Only the parts of the
+ * screen where something has changed since the last paint are repainted,
+ * unless so much has changed that it is quicker to repaint everything.
+ * In raster mode, participants and the legend are copied from pictures
+ * drawn ahead of time (see SpriteAtlas) instead of being stroked.  When
+ * the HUD is on, a summary of the tick metrics is drawn in the corner.
  * @author Joe Zachary
  */
 public class Screen extends JPanel {
 	
-	// The participants (asteroids, bullets, ships, etc.) that are
-	// involved in the game.
-	private LinkedList<Participant> participants;
+	// Most outlines gathered into one path before it is stroked.  Very large
+	// paths cover most of the screen and are slower to fill in than several
+	// smaller ones.
+	private final static int BATCH_LIMIT = 64;
 	
-	// Objects interested in learning about collisions between 
-	// pairs of participants
-	private Set<CollisionListener> listeners;
+	// Size in pixels of the tiles used to keep track of what needs repainting
+	private final static int TILE_SIZE = 25;
 	
-	// Participants that will be added to/removed from the game at the next refresh
-	private Set<Participant> pendingAdds;
-	private Set<Participant> pendingRemoves;
+	// Fraction of the screen, and number of separate rectangles, beyond which
+	// the whole screen is repainted instead of only the parts that changed
+	private final static double FULL_REPAINT_COVERAGE = 0.5;
+	private final static int FULL_REPAINT_RECTANGLES = 32;
 	
-	// Legend that is displayed across the screen
+	// Extra room, in pixels, left around each outline for the width of the
+	// stroke and antialiasing
+	private final static int MARGIN = 2;
+	
+	// Width in pixels of the HUD, and the font it is written in
+	private final static int HUD_WIDTH = 320;
+	private final static Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	
+	// The game being displayed
+	private World world;
+	
+	// Private copies of the published frames.  These are taken on the event
+	// dispatch thread whenever the screen is to be repainted, and are what
+	// is painted until the next time.
+	private Frame drawn, before;
+	
+	// The parts of the screen covered by participants in the frames being
+	// painted, and those covered in the frames that were painted before them
+	private DirtyRegion covered, wasCovered;
+	
+	// How far (from 0 to 1) to draw participants along the way from where
+	// they were in the earlier frame to where they are in the later one.
+	// This is fixed when the frames are taken, so that every part of the
+	// screen painted from them agrees.
+	private double alpha;
+	
+	// The legend being painted, and the box it occupies (and occupied in the
+	// frames painted before)
 	private String legend;
+	private Rectangle legendBox, oldLegendBox;
+	
+	// For each type of participant, the path into which the outlines of the
+	// participants of that type are gathered while painting, and how many
+	// outlines each holds
+	private Path2D.Double[] batches;
+	private int[] batchSizes;
+	
+	// Whether participants and the legend are copied from pictures, and the
+	// pictures (which are only drawn once raster mode is first used)
+	private boolean rasterMode;
+	private SpriteAtlas atlas;
+	
+	// Asks for the screen to be repainted at the display's pace
+	private Timer renderTimer;
+	
+	// Told when each frame has been painted, or null
+	private InputLatency latency;
+	
+	// Where the time taken to paint is recorded and the metrics shown by the
+	// HUD come from, or null
+	private TickMetrics metrics;
+	
+	// Whether the HUD is shown, and the box it occupies
+	private boolean hud;
+	private Rectangle hudBox;
 	
 	
 	/**
-	 * Creates an empty screen
+	 * Creates a screen that displays a new, empty world
 	 */
 	public Screen () {
-		participants = new LinkedList<Participant>();
-		listeners = new HashSet<CollisionListener>();
-		pendingAdds = new HashSet<Participant>();
-		pendingRemoves = new HashSet<Participant>();
+		this(new World());
+	}
+	
+	
+	/**
+	 * Creates a screen that displays the given world
+	 */
+	public Screen (World world) {
+		this.world = world;
+		world.setPublishing(true);
+		drawn = new Frame();
+		before = new Frame();
+		batches = new Path2D.Double[ParticipantStore.TYPE_COUNT];
+		for (int t = 0; t < batches.length; t++) {
+			batches[t] = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+		}
+		batchSizes = new int[ParticipantStore.TYPE_COUNT];
+		covered = new DirtyRegion(SIZE, SIZE, TILE_SIZE);
+		wasCovered = new DirtyRegion(SIZE, SIZE, TILE_SIZE);
 		legend = "";
+		legendBox = new Rectangle();
+		oldLegendBox = new Rectangle();
+		hud = false;
+		hudBox = new Rectangle();
 		setPreferredSize(new Dimension(SIZE, SIZE));
 		setMinimumSize(new Dimension(SIZE, SIZE));
 		setBackground(Color.black);
 		setForeground(Color.white);
 		setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 120));
 		setFocusable(true);
+		setRasterMode(Boolean.getBoolean("asteroids.raster"));
+		
+		renderTimer = new Timer(RENDER_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed (ActionEvent e) {
+				repaintChanges();
+			}
+		});
+		renderTimer.start();
 	}
 		
 
 	/**
-	 * Add a participant to the game
+	 * Stops asking for the screen to be repainted
 	 */
-	public void addParticipant (Participant p) {
-		pendingAdds.add(p);
+	public void stopRendering () {
+		renderTimer.stop();
 	}
 	
-
+	
 	/**
-	 * Remove a participant from the game
+	 * Arranges for the input latency tracker to be told when each frame has
+	 * been painted
 	 */
-	public void removeParticipant(Participant p) {
-		pendingRemoves.add(p);	
+	void setInputLatency (InputLatency latency) {
+		this.latency = latency;
 	}
 	
 	
 	/**
-	 * Set the legend
+	 * Arranges for the time taken by each paint to be recorded in the
+	 * metrics, which are also what the HUD shows
 	 */
-	public void setLegend (String legend) {
-		this.legend = legend;
+	void setMetrics (TickMetrics metrics) {
+		this.metrics = metrics;
 	}
 	
-		
+	
 	/**
-	 * Paint the participants onto this panel
+	 * Shows the HUD if it is hidden and hides it if it is shown.  There is
+	 * nothing to show unless there are metrics.
 	 */
-	@Override
-	public void paintComponent (Graphics g) {
-		
-		// Do the default painting 
-		super.paintComponent(g);
-		
-		// Draw each participant in its proper place
-		for (Participant e: participants) {
-			e.draw((Graphics2D) g);
+	public void toggleHud () {
+		hud = !hud && metrics != null;
+		repaint();
+	}
+	
+	
+	/**
+	 * Switches between stroking outlines and copying pictures of them
+	 */
+	public void setRasterMode (boolean raster) {
+		if (raster && atlas == null) {
+			atlas = new SpriteAtlas(getForeground(), getFont());
+			atlas.prebuild();
 		}
-		
-		// Draws the legend across the middle of the panel
-		int size = g.getFontMetrics().stringWidth(legend);
-		
-		g.drawString(legend, (SIZE - size)/2, SIZE/2);
+		rasterMode = raster;
+		repaint();
 	}
 	
 	
 	/**
-	 * Clear the screen so that nothing is displayed
+	 * Reports whether outlines are copied from pictures instead of stroked
 	 */
-	public void clear () {
-		pendingRemoves.clear();
-		pendingAdds.clear();
-		participants.clear();
-		legend = "";
+	public boolean isRasterMode () {
+		return rasterMode;
+	}
+	
+	
+	/**
+	 * Takes copies of the latest frames and repaints the parts of the screen
+	 * where they differ from what was painted before: wherever a participant
+	 * is now or was last time, and wherever the legend is if it has changed.
+	 */
+	private void repaintChanges () {
+		wasCovered.copyFrom(covered);
+		String oldLegend = legend;
+		oldLegendBox.setBounds(legendBox);
+		takeFrames();
+		if (!legend.equals(oldLegend)) {
+			covered.add(oldLegendBox.getMinX(), oldLegendBox.getMinY(), oldLegendBox.getMaxX(), oldLegendBox.getMaxY());
+			covered.add(legendBox.getMinX(), legendBox.getMinY(), legendBox.getMaxX(), legendBox.getMaxY());
+		}
+		if (hud) {
+			covered.add(hudBox.getMinX(), hudBox.getMinY(), hudBox.getMaxX(), hudBox.getMaxY());
+		}
+		wasCovered.addAll(covered);
+		if (wasCovered.isEmpty()) {
+			return;
+		}
+		int count = wasCovered.computeRectangles();
+		if (wasCovered.getCoverage() > FULL_REPAINT_COVERAGE || count > FULL_REPAINT_RECTANGLES) {
+			repaint();
+		}
+		else {
+			for (int i = 0; i < count; i++) {
+				paintImmediately(wasCovered.getRectangle(i));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Takes copies of the latest frames to be painted, and works out which
+	 * parts of the screen their participants can cover.  While the frames are
+	 * painted, each participant lies somewhere between where it was in the
+	 * two frames, so it is within the box that holds both places.
+	 */
+	void takeFrames () {
+		world.copyFrames(drawn, before);
+		before.index();
+		alpha = (System.nanoTime() - drawn.time) / (FRAME_INTERVAL * 1000000.0);
+		alpha = Math.max(0, Math.min(1, alpha));
+		covered.clear();
+		for (int i = 0; i < drawn.count; i++) {
+			if (drawn.shapes[i] == null) {
+				covered.fill();
+				continue;
+			}
+			int k = before.find(drawn.handles[i]);
+			if (k >= 0) {
+				cover(drawn.shapes[i], before.x[k], before.y[k], drawn.x[i], drawn.y[i]);
+			}
+			else {
+				cover(drawn.shapes[i], drawn.x[i], drawn.y[i], drawn.x[i], drawn.y[i]);
+			}
+		}
+		for (int i = 0; i < drawn.particleCount; i++) {
+			cover(drawn.particleShapes[i], drawn.fromX[i], drawn.fromY[i], drawn.toX[i], drawn.toY[i]);
+		}
+		if (!drawn.legend.equals(legend)) {
+			legend = drawn.legend;
+			FontMetrics metrics = getFontMetrics(getFont());
+			int width = metrics.stringWidth(legend);
+			legendBox.setBounds((SIZE - width)/2 - MARGIN, SIZE/2 - metrics.getAscent() - MARGIN,
+				width + 2*MARGIN, metrics.getAscent() + metrics.getDescent() + 2*MARGIN);
+		}
 	}
 	
 	
 	/**
-	 * Records a new listener
+	 * Marks as covered the part of the screen where an outline can be drawn
+	 * while moving from (x0,y0) to (x1,y1).  If the two are so far apart that
+	 * it must have wrapped around the screen, it is only drawn at (x1,y1).
 	 */
-	public void addCollisionListener (CollisionListener listener) {
-		listeners.add(listener);
+	private void cover (CollisionShape shape, double x0, double y0, double x1, double y1) {
+		double reach = MARGIN + shape.getOutlineRadius();
+		if (wrapped(x0, y0, x1, y1)) {
+			x0 = x1;
+			y0 = y1;
+		}
+		covered.add(Math.min(x0, x1) - reach, Math.min(y0, y1) - reach, Math.max(x0, x1) + reach, Math.max(y0, y1) + reach);
 	}
 	
 	
 	/**
-	 * Removes an existing listener.
+	 * Reports whether something that was at (x0,y0) and is now at (x1,y1)
+	 * has wrapped around the screen in between
 	 */
-	public void removeCollisionListener (CollisionListener listener) {
-		listeners.remove(listener);
+	private static boolean wrapped (double x0, double y0, double x1, double y1) {
+		return Math.abs(x1 - x0) >= SIZE/2 || Math.abs(y1 - y0) >= SIZE/2;
 	}
 	
 	
 	/**
-	 * Compares each pair of elements to detect collisions, then notifies
-	 * all listeners of any found. 
+	 * Draws an outline of the given type at (x,y), turned by rotation, unless
+	 * it lies wholly outside the clip.  Depending on the mode and type, the
+	 * outline is either copied from a picture, added to its type's batch, or
+	 * drawn on its own.
 	 */
-	  private void checkForCollisions () {
-	        for (Participant p1: participants) {
-	            Iterator<Participant> iter = participants.descendingIterator();
-	            while (iter.hasNext()) {
-	                Participant p2 = iter.next();
-	                if (p2 == p1) break;
-	                if (pendingRemoves.contains(p1)) break;
-	                if (pendingRemoves.contains(p2)) break;
-	                if (p1.overlaps(p2)) {
-	                    for (CollisionListener listener: listeners) {
-	                        listener.collidedWith(p1, p2);
-	                    }
-	                }
-	            }
-	        }
-	    }	
+	private void draw (Graphics2D g2, AffineTransform base, Rectangle clip, int type,
+			Shape outline, CollisionShape shape, double x, double y, double rotation) {
+		if (clip != null && shape != null) {
+			double reach = MARGIN + shape.getOutlineRadius();
+			if (x + reach < clip.x || x - reach > clip.x + clip.width ||
+				y + reach < clip.y || y - reach > clip.y + clip.height) {
+				return;
+			}
+		}
+		if (rasterMode) {
+			SpriteAtlas.Sprite[] sprites = atlas.getSprites(outline);
+			SpriteAtlas.draw(g2, sprites[SpriteAtlas.rotationIndex(rotation)], x, y);
+		}
+		else if (type == ParticipantStore.OTHER || shape == null) {
+			g2.translate(x, y);
+			g2.rotate(rotation);
+			g2.draw(outline);
+			g2.setTransform(base);
+		}
+		else {
+			shape.appendOutline(batches[type], Math.cos(rotation), Math.sin(rotation), x, y);
+			if (++batchSizes[type] == BATCH_LIMIT) {
+				g2.draw(batches[type]);
+				batches[type].reset();
+				batchSizes[type] = 0;
+			}
+		}
+	}
+	
 	
 	/**
-	 * Completes any adds and removes that have been requested.  
+	 * Returns the world being displayed
 	 */
-	private void completeAddsAndRemoves () {
+	public World getWorld () {
+		return world;
+	}
+	
 		
-		// Note: These updates are saved up done later to avoid modiying
-		// the participants list while it is being iterated over
-		for (Participant p: pendingAdds) {
-			participants.add(p);
+	/**
+	 * Paint the participants onto this panel.  Each participant is drawn at
+	 * a point between where it was in the last two frames, so that motion
+	 * stays smooth even when painting is more frequent than refreshing.
+	 * Participants of the known types all look alike, so each type is drawn
+	 * as one batch; participants of other types are drawn one at a time,
+	 * since nothing is known of how they ought to look.  Participants that
+	 * lie wholly outside the area being repainted are skipped.
+	 */
+	@Override
+	public void paintComponent (Graphics g) {
+		
+		long start = System.nanoTime();
+		
+		// Do the default painting 
+		super.paintComponent(g);
+		
+		// Set up the rendering state once for everything that follows
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setColor(getForeground());
+		g2.setFont(getFont());
+		AffineTransform base = g2.getTransform();
+		Rectangle clip = g2.getClipBounds();
+		for (int t = 0; t < batches.length; t++) {
+			batches[t].reset();
+			batchSizes[t] = 0;
 		}
-		pendingAdds.clear();
-		for (Participant p: pendingRemoves) {
-			participants.remove(p);
+		
+		// Put each participant in its proper place
+		for (int i = 0; i < drawn.count; i++) {
+			double x = drawn.x[i];
+			double y = drawn.y[i];
+			double rotation = drawn.rotation[i];
+			
+			// Participants that have just appeared or have just wrapped around
+			// the screen are drawn where they are now
+			int k = before.find(drawn.handles[i]);
+			if (k >= 0 && !wrapped(before.x[k], before.y[k], x, y)) {
+				double turn = Math.IEEEremainder(rotation - before.rotation[k], 2*Math.PI);
+				x = before.x[k] + alpha * (x - before.x[k]);
+				y = before.y[k] + alpha * (y - before.y[k]);
+				rotation = before.rotation[k] + alpha * turn;
+			}
+			draw(g2, base, clip, drawn.types[i], drawn.outlines[i], drawn.shapes[i], x, y, rotation);
+		}
+		
+		// And each particle
+		for (int i = 0; i < drawn.particleCount; i++) {
+			double x = drawn.toX[i];
+			double y = drawn.toY[i];
+			if (!wrapped(drawn.fromX[i], drawn.fromY[i], x, y)) {
+				x = drawn.fromX[i] + alpha * (x - drawn.fromX[i]);
+				y = drawn.fromY[i] + alpha * (y - drawn.fromY[i]);
+			}
+			draw(g2, base, clip, drawn.particleTypes[i], drawn.particleOutlines[i], drawn.particleShapes[i], x, y, 0);
+		}
+		
+		// Stroke the batches
+		for (int t = 0; t < batches.length; t++) {
+			if (batchSizes[t] > 0) {
+				g2.draw(batches[t]);
+			}
+		}
+		
+		// Draws the legend across the middle of the panel
+		int size = g.getFontMetrics().stringWidth(legend);
+		
+		SpriteAtlas.Sprite picture = (rasterMode && legend.length() > 0) ? atlas.getLegend(legend) : null;
+		if (picture != null) {
+			SpriteAtlas.draw(g, picture, (SIZE - size)/2, SIZE/2);
+		}
+		else {
+			g.drawString(legend, (SIZE - size)/2, SIZE/2);
+		}
+		
+		if (hud) {
+			drawHud(g2);
+		}
+		
+		long end = System.nanoTime();
+		if (metrics != null) {
+			metrics.recordPhase(TickMetrics.PAINT, end - start);
+		}
+		if (latency != null) {
+			latency.painted(drawn.time, end);
 		}
-		pendingRemoves.clear();
 	}
 	
 	
 	/**
-	 * Called when it is time to update the screen display.  This is what
-	 * drives the animation.
+	 * Writes a summary of the metrics in the top left corner
 	 */
-	public void refresh () {
-		completeAddsAndRemoves();
-		for (Participant p: participants) {
-			p.move();
+	private void drawHud (Graphics2D g) {
+		List<String> lines = metrics.summarize();
+		g.setFont(HUD_FONT);
+		FontMetrics fm = g.getFontMetrics();
+		int height = fm.getHeight();
+		hudBox.setBounds(0, 0, HUD_WIDTH, lines.size() * height + 2*MARGIN);
+		for (int i = 0; i < lines.size(); i++) {
+			g.drawString(lines.get(i), MARGIN, MARGIN + fm.getAscent() + i * height);
 		}
-		checkForCollisions();
-		repaint();
+		g.setFont(getFont());
 	}
 
 }
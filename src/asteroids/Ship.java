@@ -2,6 +2,7 @@ package asteroids;
 
 import java.awt.Shape;
 import java.awt.geom.*;
+import static asteroids.Constants.*;
 
 
 /**
@@ -10,19 +11,30 @@ import java.awt.geom.*;
  */
 public class Ship extends Participant {
 	
+	// The outline shared by every ship.  It must not be modified.
+	private static final Shape OUTLINE = createShip();
+	
 	// The outline of the ship
 	private Shape outline;
 	
 	
 	//  Constructs a ship
 	public Ship () {
+		outline = OUTLINE;
+	}
+	
+	
+	/**
+	 * Creates the outline of a ship, pointing to the right
+	 */
+	private static Shape createShip () {
 		Path2D.Double poly = new Path2D.Double();
 		poly.moveTo(20, 0);
 		poly.lineTo(-20, 12);
 		poly.lineTo(-12, 0);
 		poly.lineTo(-20, -12);
 		poly.closePath();
-		outline = poly;
+		return poly;
 	}
 	
 	/**
@@ -30,9 +42,7 @@ public class Ship extends Participant {
 	 * ship's nose is located.
 	 */
 	public double getXNose () {
-		Point2D.Double point = new Point2D.Double(20, 0);
-		transformPoint(point);
-		return point.getX();
+		return transformX(20, 0);
 	}
 	
 	/**
@@ -40,9 +50,7 @@ public class Ship extends Participant {
 	 * ship's nose is located.
 	 */
 	public double getYNose () {
-		Point2D.Double point = new Point2D.Double(20, 0);
-		transformPoint(point);
-		return point.getY();
+		return transformY(20, 0);
 	}
 	
 	
@@ -55,12 +63,29 @@ public class Ship extends Participant {
 	}
 	
 	/**
-	 * Customizes the base move method by imposing friction
+	 * Identifies this participant as a ship
+	 */
+	@Override
+	int getType () {
+		return ParticipantStore.SHIP;
+	}
+	
+	
+	/**
+	 * Ships only collide with asteroids
+	 */
+	@Override
+	int getCollisionMask () {
+		return ParticipantStore.layerOf(ParticipantStore.ASTEROID);
+	}
+	
+	
+	/**
+	 * Imposes friction on every move
 	 */
 	@Override
-	public void move () {
-		super.move();
-		friction();
+	double getFriction () {
+		return FRICTION;
 	}
 	
 }
\ No newline at end of file
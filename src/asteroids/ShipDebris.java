@@ -4,26 +4,29 @@ import java.awt.Shape;
 import java.awt.geom.Path2D;
 
 /**
- * This class creates the debris that is seen
+ * Holds the outlines of the debris that is seen
  * when an asterod object hits a ship object.
+ * Ship debris is shown as particles, which need
+ * only these.
  * 
 * @author James Fairbourn
 */
-public class ShipDebris extends Participant {
+public class ShipDebris {
 
-	//the outline of the ship debris
-	private Shape outline;
+	//the outlines shared by all ship debris, by variety.
+	//They must not be modified.
+	private static final Shape LONG_OUTLINE = createDebris(1);
+	private static final Shape SHORT_OUTLINE = createDebris(2);
 	
 	/**
-	 * Selects a certain style of debris
-	 * when the debris variety is sent as
-	 * a parameter 
+	 * Returns the outline shared by all debris of
+	 * the given variety.
 	 * 
 	 * @param variety The choice of debris variety.
 	 */
-	public ShipDebris(int variety)
+	static Shape getSharedOutline(int variety)
 	{
-		outline = createDebris(variety);
+		return (variety == 1) ? LONG_OUTLINE : SHORT_OUTLINE;
 	}
 	
 	/**
@@ -34,7 +37,7 @@ public class ShipDebris extends Participant {
 	 * @param variety The choice of debris variety
 	 * @return the specific shape of debris chosen.
 	 */
-	private Shape createDebris (int variety)
+	private static Shape createDebris (int variety)
 	{
 		Path2D.Double poly = new Path2D.Double();
 		if(variety==1)
@@ -52,12 +55,5 @@ public class ShipDebris extends Participant {
 		}
 		return poly;
 	}
-	
-	@Override
-	Shape getOutline() {
-		// TODO Auto-generated method stub
-		return outline;
-	}
-
 
 }
@@ -0,0 +1,184 @@
+package asteroids;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import static asteroids.Constants.*;
+
+/**
+ * Runs the game on its own thread at a fixed rate of one tick every
+ * FRAME_INTERVAL milliseconds.  The loop keeps track of how much time it
+ * owes the game and runs as many ticks as are due, so a slow tick is made
+ * up for by the following ones rather than slowing the game down.  Key
+ * events from the event dispatch thread pass through a lock-free ring, and
+ * other work that other threads want done to the game is queued; both are
+ * carried out at the start of the next tick.  How long key events take to
+ * be applied and simulated is recorded in an InputLatency, and is printed
+ * every ten seconds when the game is run with -Dasteroids.latency=true.
+ */
+class Simulation implements Runnable {
+
+	// Length of a tick in nanoseconds
+	private final static long TICK_NANOS = FRAME_INTERVAL * 1000000L;
+
+	// Most ticks that will be run back to back to catch up.  Beyond this the
+	// game is allowed to fall behind instead of never drawing a frame.
+	private final static int MAX_CATCH_UP = 5;
+	
+	// Interval between latency reports in nanoseconds
+	private final static long REPORT_NANOS = 10000000000L;
+
+	// The controller whose game is being run, and its world
+	private Controller controller;
+	private World world;
+
+	// Work to be done on the simulation thread
+	private ConcurrentLinkedQueue<Runnable> tasks;
+	
+	// Key events waiting for the next tick
+	private InputRing keys;
+	
+	// Where the stages of each key event are timed
+	private InputLatency latency;
+	
+	// When each of the key events applied by the current tick was received
+	private long[] received;
+	private int receivedCount;
+	
+	// Whether latency is reported, and when it was last reported
+	private boolean reporting;
+	private long lastReport;
+
+	// The thread running the loop, and whether it should keep running
+	private Thread thread;
+	private volatile boolean running;
+
+
+	/**
+	 * Creates a simulation of the controller's game in the world, which
+	 * times key events with the latency tracker.  It doesn't run until it is
+	 * started.
+	 */
+	public Simulation (Controller controller, World world, InputLatency latency) {
+		this.controller = controller;
+		this.world = world;
+		this.latency = latency;
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		keys = new InputRing();
+		received = new long[16];
+		receivedCount = 0;
+		reporting = Boolean.getBoolean("asteroids.latency");
+		running = false;
+	}
+
+
+	/**
+	 * Starts the simulation thread
+	 */
+	public void start () {
+		running = true;
+		thread = new Thread(this, "Asteroids simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Asks the simulation thread to stop after its current tick
+	 */
+	public void stop () {
+		running = false;
+		LockSupport.unpark(thread);
+	}
+
+
+	/**
+	 * Arranges for the task to be run on the simulation thread at the start
+	 * of the next tick.  This can be called from any thread.
+	 */
+	public void invokeLater (Runnable task) {
+		tasks.add(task);
+	}
+
+
+	/**
+	 * Passes a key going down or up to the simulation thread, which deals
+	 * with it at the start of the next tick.  This must only be called from
+	 * the event dispatch thread.
+	 */
+	public void keyChanged (int code, boolean down) {
+		if (!keys.offer(code, down)) {
+			latency.dropped();
+		}
+	}
+	
+	
+	/**
+	 * The fixed-timestep loop
+	 */
+	@Override
+	public void run () {
+		long previous = System.nanoTime();
+		long owed = 0;
+		while (running) {
+			long now = System.nanoTime();
+			owed += now - previous;
+			previous = now;
+
+			int ticks = 0;
+			while (owed >= TICK_NANOS && ticks < MAX_CATCH_UP) {
+				tick();
+				owed -= TICK_NANOS;
+				ticks++;
+			}
+			if (owed >= TICK_NANOS) {
+				owed = 0;
+			}
+
+			LockSupport.parkNanos(TICK_NANOS - owed);
+		}
+	}
+
+
+	/**
+	 * Runs the queued tasks, deals with the key events that have arrived and
+	 * then runs one tick of the game.  The loop calls this on the simulation
+	 * thread; a simulation that hasn't been started can be driven by calling
+	 * it directly.
+	 */
+	void tick () {
+		try {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+			long now = System.nanoTime();
+			receivedCount = 0;
+			while (keys.next()) {
+				if (receivedCount == received.length) {
+					received = Arrays.copyOf(received, 2 * receivedCount);
+				}
+				received[receivedCount++] = keys.getTime();
+				latency.applied(keys.getTime(), now);
+				controller.keyChanged(keys.getCode(), keys.isDown());
+			}
+			controller.tick();
+			
+			if (receivedCount > 0) {
+				long done = System.nanoTime();
+				long frameTime = world.getFrameTime();
+				for (int i = 0; i < receivedCount; i++) {
+					latency.simulated(received[i], done, frameTime);
+				}
+			}
+			if (reporting && now - lastReport >= REPORT_NANOS) {
+				latency.print(System.out);
+				lastReport = now;
+			}
+		}
+		catch (RuntimeException e) {
+			// Report the problem but keep the game going
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package asteroids;
+
+import java.io.*;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import javax.sound.sampled.*;
+
+/**
+ * Plays the game's sound effects.  Each sound file is decoded once, when the
+ * bank is created, into a fixed number of clips (voices) that are opened
+ * ahead of time.  Playing a sound just queues a request, which a background
+ * thread carries out by restarting an idle voice of that sound or, if all of
+ * them are busy, the one that has been playing the longest.  Nothing that
+ * asks for a sound ever waits on the audio system.
+ */
+class SoundBank {
+
+	/**
+	 * The sounds that can be played
+	 */
+	public final static int FIRE = 0;
+	public final static int THRUST = 1;
+	public final static int BANG_SMALL = 2;
+	public final static int BANG_MEDIUM = 3;
+	public final static int BANG_LARGE = 4;
+
+	// The file holding each sound
+	private final static String[] FILES = {
+		"fire.wav", "thrust.wav", "bangSmall.wav", "bangMedium.wav", "bangLarge.wav"
+	};
+
+	// The number of voices of each sound that can play at once
+	private final static int[] VOICES = { 8, 2, 4, 4, 4 };
+
+	// Number of requests that can be waiting before new ones are dropped
+	private final static int QUEUE_LENGTH = 64;
+
+	// The voices of each sound, or null if the sound couldn't be loaded
+	private Clip[][] voices;
+
+	// When each voice was last started
+	private long[][] started;
+
+	// Sounds waiting to be played
+	private ArrayBlockingQueue<Integer> requests;
+
+
+	/**
+	 * Loads every sound and starts the thread that plays them.  Sounds that
+	 * can't be loaded (because the file is missing or there is no audio
+	 * device, for example) are reported and then stay silent.
+	 */
+	public SoundBank () {
+		voices = new Clip[FILES.length][];
+		started = new long[FILES.length][];
+		for (int s = 0; s < FILES.length; s++) {
+			try {
+				voices[s] = load(FILES[s], VOICES[s]);
+				started[s] = new long[VOICES[s]];
+			}
+			catch (Exception e) {
+				System.err.println("Unable to load " + FILES[s] + ": " + e);
+				voices[s] = null;
+			}
+		}
+
+		requests = new ArrayBlockingQueue<Integer>(QUEUE_LENGTH);
+		Thread player = new Thread("Asteroids sound") {
+			@Override
+			public void run () {
+				try {
+					while (true) {
+						playNow(requests.take());
+					}
+				}
+				catch (InterruptedException e) {
+					// Time to stop
+				}
+			}
+		};
+		player.setDaemon(true);
+		player.start();
+	}
+
+
+	/**
+	 * Asks for a sound to be played.  This returns immediately.  If too many
+	 * requests are already waiting, the sound is skipped.
+	 */
+	public void play (int sound) {
+		if (voices[sound] != null) {
+			requests.offer(sound);
+		}
+	}
+
+
+	/**
+	 * Plays a sound on the calling thread, using an idle voice if there is
+	 * one and otherwise the voice that was started longest ago.
+	 */
+	private void playNow (int sound) {
+		Clip[] clips = voices[sound];
+		long[] times = started[sound];
+		int voice = 0;
+		for (int v = 0; v < clips.length; v++) {
+			if (!clips[v].isActive()) {
+				voice = v;
+				break;
+			}
+			if (times[v] < times[voice]) {
+				voice = v;
+			}
+		}
+		GameEvents.Sound event = null;
+		if (GameEvents.SOUND.isEnabled()) {
+			event = new GameEvents.Sound();
+			event.begin();
+			for (Clip c: clips) {
+				event.busy += c.isActive() ? 1 : 0;
+			}
+		}
+		
+		Clip clip = clips[voice];
+		clip.stop();
+		clip.setFramePosition(0);
+		clip.start();
+		times[voice] = System.nanoTime();
+		
+		if (event != null) {
+			event.sound = FILES[sound];
+			event.voice = voice;
+			event.waiting = requests.size();
+			event.commit();
+		}
+	}
+
+
+	/**
+	 * Decodes a sound file and opens the given number of clips that play it.
+	 * The file is looked for next to the game's classes and then in the
+	 * current directory.
+	 */
+	private static Clip[] load (String file, int count)
+			throws IOException, UnsupportedAudioFileException, LineUnavailableException {
+		AudioInputStream stream;
+		URL resource = SoundBank.class.getResource(file);
+		if (resource != null) {
+			stream = AudioSystem.getAudioInputStream(resource);
+		}
+		else {
+			stream = AudioSystem.getAudioInputStream(new File(file));
+		}
+
+		AudioFormat format;
+		byte[] data;
+		try {
+			format = stream.getFormat();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = stream.read(buffer)) > 0) {
+				bytes.write(buffer, 0, n);
+			}
+			data = bytes.toByteArray();
+		}
+		finally {
+			stream.close();
+		}
+
+		Clip[] clips = new Clip[count];
+		for (int v = 0; v < count; v++) {
+			clips[v] = AudioSystem.getClip();
+			clips[v].open(format, data, 0, data.length);
+		}
+		return clips;
+	}
+}
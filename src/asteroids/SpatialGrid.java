@@ -0,0 +1,217 @@
+package asteroids;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import static asteroids.Constants.*;
+
+/**
+ * A uniform grid laid over the game area that is used as a broadphase for
+ * collision detection.  Each participant is entered into every cell that its
+ * bounding box covers, and only participants that share a cell are reported
+ * as candidate pairs.  Cell coordinates wrap around at the edges of the grid
+ * (just as participants wrap around the screen), so participants that are
+ * partially off one edge of the screen still land in the same cells as the
+ * participants that they might be touching.  Pairs of participants whose
+ * collision layers and masks rule out a collision are never reported.
+ */
+class SpatialGrid {
+
+	// Number of cells along each side of the grid
+	private int cells;
+
+	// Width and height of a single cell in pixels
+	private double cellSize;
+
+	// For each participant, the first and last (unwrapped) column and row
+	// covered by its bounds, stored as four consecutive entries.
+	private int[] ranges;
+
+	// For each cell, the position in entries at which its participants begin.
+	// The last element marks the end of the final cell.
+	private int[] cellStart;
+
+	// Participant indices, grouped by cell
+	private int[] entries;
+
+	// Candidate pairs, encoded so that sorting puts them in the order in which
+	// the all-pairs scan would have visited them
+	private long[] pairs;
+
+	// Number of candidate pairs found by the last call to build
+	private int pairCount;
+
+	// Number of times the last call to build found two participants sharing
+	// a cell, before ruling pairs out by layer and removing duplicates
+	private int sharedCount;
+
+
+	/**
+	 * Creates a grid that covers the game area with square cells of the
+	 * given size.
+	 */
+	public SpatialGrid (double cellSize) {
+		this.cellSize = cellSize;
+		cells = Math.max(1, (int) Math.ceil(SIZE / cellSize));
+		ranges = new int[64];
+		cellStart = new int[cells*cells + 1];
+		entries = new int[64];
+		pairs = new long[64];
+		pairCount = 0;
+		sharedCount = 0;
+	}
+
+
+	/**
+	 * Places the first n participants into the grid and finds the candidate
+	 * pairs.  Participants that have not yet been moved (and so have no
+	 * bounds), or that can't collide with anything, are ignored.  The
+	 * collision layer and mask of each participant are given by the arrays
+	 * of the same names.
+	 */
+	public void build (Participant[] participants, int n, int[] layer, int[] mask) {
+
+		// Work out which cells each participant covers and count the entries
+		// that will be made in each cell
+		if (ranges.length < 4*n) {
+			ranges = new int[Math.max(4*n, 2*ranges.length)];
+		}
+		Arrays.fill(cellStart, 0);
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			Rectangle2D bounds = participants[i].getBounds();
+			int k = 4*i;
+			if (bounds == null || mask[i] == 0) {
+				ranges[k] = 0;
+				ranges[k+1] = -1;
+				ranges[k+2] = 0;
+				ranges[k+3] = -1;
+				continue;
+			}
+			ranges[k] = (int) Math.floor(bounds.getMinX() / cellSize);
+			ranges[k+1] = Math.min((int) Math.floor(bounds.getMaxX() / cellSize), ranges[k] + cells - 1);
+			ranges[k+2] = (int) Math.floor(bounds.getMinY() / cellSize);
+			ranges[k+3] = Math.min((int) Math.floor(bounds.getMaxY() / cellSize), ranges[k+2] + cells - 1);
+			for (int row = ranges[k+2]; row <= ranges[k+3]; row++) {
+				for (int col = ranges[k]; col <= ranges[k+1]; col++) {
+					cellStart[cell(col, row) + 1]++;
+					total++;
+				}
+			}
+		}
+
+		// Turn the counts into starting positions, then fill in the entries.
+		// Because participants are visited in order, the entries in each cell
+		// are in increasing order.
+		for (int c = 0; c < cells*cells; c++) {
+			cellStart[c+1] += cellStart[c];
+		}
+		if (entries.length < total) {
+			entries = new int[Math.max(total, 2*entries.length)];
+		}
+		for (int i = 0; i < n; i++) {
+			int k = 4*i;
+			for (int row = ranges[k+2]; row <= ranges[k+3]; row++) {
+				for (int col = ranges[k]; col <= ranges[k+1]; col++) {
+					entries[cellStart[cell(col, row)]++] = i;
+				}
+			}
+		}
+
+		// The fill loop advanced each start to the start of the next cell,
+		// so shift everything back by one.
+		for (int c = cells*cells; c > 0; c--) {
+			cellStart[c] = cellStart[c-1];
+		}
+		cellStart[0] = 0;
+
+		// Every pair of participants that share a cell is a candidate
+		pairCount = 0;
+		sharedCount = 0;
+		for (int c = 0; c < cells*cells; c++) {
+			int end = cellStart[c+1];
+			for (int a = cellStart[c]; a < end; a++) {
+				int i = entries[a];
+				sharedCount += end - a - 1;
+				for (int b = a+1; b < end; b++) {
+					int j = entries[b];
+					if ((layer[i] & mask[j]) != 0 && (layer[j] & mask[i]) != 0) {
+						addPair(i, j);
+					}
+				}
+			}
+		}
+
+		// Put the pairs in order and remove the duplicates that arise when a
+		// pair shares more than one cell
+		Arrays.sort(pairs, 0, pairCount);
+		int unique = 0;
+		for (int p = 0; p < pairCount; p++) {
+			if (unique == 0 || pairs[p] != pairs[unique-1]) {
+				pairs[unique++] = pairs[p];
+			}
+		}
+		pairCount = unique;
+	}
+
+
+	/**
+	 * Returns the number of times the last build found two participants in
+	 * the same cell.  This counts pairs that share several cells once for
+	 * each, and pairs that were then ruled out by their layers.
+	 */
+	public int getSharedCount () {
+		return sharedCount;
+	}
+
+
+	/**
+	 * Returns the number of candidate pairs found by the last build
+	 */
+	public int getPairCount () {
+		return pairCount;
+	}
+
+
+	/**
+	 * Returns the index of the first participant in the kth candidate pair.
+	 * Pairs are ordered by increasing first index.
+	 */
+	public int getFirst (int k) {
+		return (int) (pairs[k] >>> 32);
+	}
+
+
+	/**
+	 * Returns the index of the second participant in the kth candidate pair.
+	 * This is always larger than the first index, and pairs with the same
+	 * first index are ordered by decreasing second index.
+	 */
+	public int getSecond (int k) {
+		return ~((int) pairs[k]);
+	}
+
+
+	/**
+	 * Records the pair (i, j), where i < j.  The second index is complemented
+	 * so that larger indices sort first.
+	 */
+	private void addPair (int i, int j) {
+		if (pairCount == pairs.length) {
+			pairs = Arrays.copyOf(pairs, 2*pairs.length);
+		}
+		pairs[pairCount++] = ((long) i << 32) | (~j & 0xFFFFFFFFL);
+	}
+
+
+	/**
+	 * Returns the index of the cell at the given column and row, wrapping
+	 * around the edges of the grid.
+	 */
+	private int cell (int col, int row) {
+		col %= cells;
+		if (col < 0) col += cells;
+		row %= cells;
+		if (row < 0) row += cells;
+		return row*cells + col;
+	}
+}
@@ -0,0 +1,214 @@
+package asteroids;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import static asteroids.Constants.*;
+
+/**
+ * Pictures of outlines and legends, drawn once into large images so that
+ * they can later be copied onto the screen instead of being stroked again.
+ * Each outline is drawn at ROTATIONS evenly spaced rotations, starting at
+ * zero, which include every rotation the ship can have.  A participant at
+ * any other rotation is shown at the nearest one.  Pictures are packed into
+ * pages in rows (shelves) of roughly equal height; a new page is started
+ * when one fills up.
+ */
+class SpriteAtlas {
+
+	/**
+	 * Number of rotations at which each outline is drawn
+	 */
+	public final static int ROTATIONS = 32;
+
+	// Width and height of a page
+	private final static int PAGE_SIZE = 1024;
+
+	// Extra room, in pixels, left around each outline for the width of the
+	// stroke and antialiasing
+	private final static int MARGIN = 2;
+
+	// Most legends that are pictured.  Pictures are never taken out of the
+	// atlas, so beyond this legends are left to be drawn as text.
+	private final static int LEGEND_LIMIT = 16;
+
+	/**
+	 * Where a picture is in the atlas
+	 */
+	static class Sprite {
+
+		// The page holding the picture
+		final BufferedImage page;
+
+		// Where the picture is on the page
+		final int x, y, width, height;
+
+		// The point of the picture that corresponds to the center of the
+		// outline, or to the left end of the legend's baseline
+		final int anchorX, anchorY;
+
+		Sprite (BufferedImage page, int x, int y, int width, int height, int anchorX, int anchorY) {
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.anchorX = anchorX;
+			this.anchorY = anchorY;
+		}
+	}
+
+	// The colour in which everything is drawn
+	private Color color;
+
+	// Pictures of each outline, by rotation
+	private Map<Shape, Sprite[]> outlines;
+
+	// Pictures of legends, and the font they are drawn in
+	private Map<String, Sprite> legends;
+	private Font font;
+
+	// The pages, and where the next picture goes on the last one
+	private ArrayList<BufferedImage> pages;
+	private int shelfX, shelfY, shelfHeight;
+
+
+	/**
+	 * Creates an empty atlas whose pictures are drawn in the given colour,
+	 * with legends in the given font
+	 */
+	public SpriteAtlas (Color color, Font font) {
+		this.color = color;
+		this.font = font;
+		outlines = new WeakHashMap<Shape, Sprite[]>();
+		legends = new HashMap<String, Sprite>();
+		pages = new ArrayList<BufferedImage>();
+	}
+
+
+	/**
+	 * Draws every rotation of the outlines of every kind of participant in
+	 * the game, so that nothing needs to be drawn once the game is underway
+	 */
+	public void prebuild () {
+		for (int variety = 0; variety < 4; variety++) {
+			for (int size = 0; size < ASTEROID_SCALE.length; size++) {
+				getSprites(new Asteroid(variety, size, 0, 0).getOutline());
+			}
+		}
+		getSprites(new Ship().getOutline());
+		getSprites(new Bullet().getOutline());
+		getSprites(Debris.getSharedOutline());
+		getSprites(ShipDebris.getSharedOutline(1));
+		getSprites(ShipDebris.getSharedOutline(2));
+		getLegend(GAME_OVER);
+	}
+
+
+	/**
+	 * Returns the number of the drawn rotation nearest to the given one
+	 */
+	public static int rotationIndex (double rotation) {
+		int i = (int) Math.round(rotation * ROTATIONS / (2*Math.PI)) % ROTATIONS;
+		return (i < 0) ? i + ROTATIONS : i;
+	}
+
+
+	/**
+	 * Returns the pictures of the outline at each rotation, drawing them if
+	 * this is the first time the outline has been seen
+	 */
+	public Sprite[] getSprites (Shape outline) {
+		Sprite[] sprites = outlines.get(outline);
+		if (sprites == null) {
+			CollisionShape shape = CollisionShape.forOutline(outline);
+			int half = (int) Math.ceil(shape.getOutlineRadius()) + MARGIN;
+			sprites = new Sprite[ROTATIONS];
+			for (int r = 0; r < ROTATIONS; r++) {
+				Sprite sprite = allocate(2*half + 1, 2*half + 1, half, half);
+				Graphics2D g = begin(sprite);
+				g.rotate(r * 2*Math.PI / ROTATIONS);
+				g.draw(outline);
+				g.dispose();
+				sprites[r] = sprite;
+			}
+			outlines.put(outline, sprites);
+		}
+		return sprites;
+	}
+
+
+	/**
+	 * Returns the picture of the legend, drawing it if this is the first time
+	 * it has been seen, or null if too many legends have been pictured
+	 */
+	public Sprite getLegend (String legend) {
+		Sprite sprite = legends.get(legend);
+		if (sprite == null) {
+			if (legends.size() >= LEGEND_LIMIT) {
+				return null;
+			}
+			FontMetrics metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).getGraphics().getFontMetrics(font);
+			int width = Math.max(1, metrics.stringWidth(legend)) + 2*MARGIN;
+			int height = metrics.getAscent() + metrics.getDescent() + 2*MARGIN;
+			sprite = allocate(width, height, MARGIN, MARGIN + metrics.getAscent());
+			Graphics2D g = begin(sprite);
+			g.setFont(font);
+			g.drawString(legend, 0, 0);
+			g.dispose();
+			legends.put(legend, sprite);
+		}
+		return sprite;
+	}
+
+
+	/**
+	 * Returns a Graphics that draws into the sprite's place on its page, with
+	 * the origin at the sprite's anchor
+	 */
+	private Graphics2D begin (Sprite sprite) {
+		Graphics2D g = sprite.page.createGraphics();
+		g.clipRect(sprite.x, sprite.y, sprite.width, sprite.height);
+		g.translate(sprite.x + sprite.anchorX, sprite.y + sprite.anchorY);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(color);
+		return g;
+	}
+
+
+	/**
+	 * Finds room for a picture of the given size and returns where it is
+	 */
+	private Sprite allocate (int width, int height, int anchorX, int anchorY) {
+		if (pages.isEmpty() || shelfX + width > PAGE_SIZE) {
+			shelfX = 0;
+			shelfY += shelfHeight;
+			shelfHeight = 0;
+		}
+		if (pages.isEmpty() || shelfY + height > PAGE_SIZE) {
+			int size = Math.max(PAGE_SIZE, Math.max(width, height));
+			pages.add(new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE));
+			shelfX = 0;
+			shelfY = 0;
+			shelfHeight = 0;
+		}
+		BufferedImage page = pages.get(pages.size() - 1);
+		Sprite sprite = new Sprite(page, shelfX, shelfY, width, height, anchorX, anchorY);
+		shelfX += width;
+		shelfHeight = Math.max(shelfHeight, height);
+		return sprite;
+	}
+
+
+	/**
+	 * Copies the sprite onto g so that its anchor lands on the pixel nearest
+	 * to (x,y)
+	 */
+	public static void draw (Graphics g, Sprite sprite, double x, double y) {
+		int left = (int) Math.round(x) - sprite.anchorX;
+		int top = (int) Math.round(y) - sprite.anchorY;
+		g.drawImage(sprite.page, left, top, left + sprite.width, top + sprite.height,
+			sprite.x, sprite.y, sprite.x + sprite.width, sprite.y + sprite.height, null);
+	}
+}
@@ -0,0 +1,281 @@
+package asteroids;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records how long each phase of a tick takes, along with what the latest
+ * tick found: how many pairs the collision grid turned up and how many of
+ * them collided, how many entities there are of each kind, and how many
+ * bytes the tick allocated, and how often each participant pool has reused
+ * a participant rather than creating one.  The simulation thread records the phases of
+ * each refresh and the event dispatch thread records painting, so the
+ * methods are synchronized.  The metrics can be watched over JMX, and
+ * summed up in a few lines of text for the screen to show.
+ */
+class TickMetrics implements TickMetricsMXBean {
+
+	/**
+	 * The phases that are timed
+	 */
+	public final static int ADDS_AND_REMOVES = 0;
+	public final static int MOVE = 1;
+	public final static int PARTICLES = 2;
+	public final static int COLLISIONS = 3;
+	public final static int DISPATCH = 4;
+	public final static int PUBLISH = 5;
+	public final static int PAINT = 6;
+
+	/**
+	 * Number of phases
+	 */
+	public final static int PHASE_COUNT = 7;
+
+	// Names of the phases, and of the kinds of entity (the participant types
+	// followed by particles)
+	private final static String[] PHASE_NAMES = {
+		"addsAndRemoves", "move", "particles", "collisions", "dispatch", "publish", "paint"
+	};
+	private final static String[] ENTITY_NAMES = {
+		"other", "asteroids", "ships", "bullets", "debris", "shipDebris", "particles"
+	};
+
+	// Name under which the metrics are registered with JMX
+	private final static String OBJECT_NAME = "asteroids:type=TickMetrics";
+
+	// Times taken by each phase
+	private LatencyHistogram[] phases;
+
+	// What the latest tick found in the collision grid
+	private int sharedCells, testedPairs, collisions;
+
+	// Number of entities of each kind after the latest tick
+	private int[] entityCounts;
+
+	// Bytes allocated by the latest tick, or -1 if that can't be measured
+	private long allocatedBytes;
+
+	// Number of participants each pool has reused and created, by type
+	private long[] poolHits, poolMisses;
+
+	// Used to measure allocation, or null if it can't be
+	private com.sun.management.ThreadMXBean threads;
+
+
+	/**
+	 * Creates empty metrics
+	 */
+	public TickMetrics () {
+		phases = new LatencyHistogram[PHASE_COUNT];
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			phases[i] = new LatencyHistogram();
+		}
+		entityCounts = new int[ENTITY_NAMES.length];
+		poolHits = new long[ENTITY_NAMES.length];
+		poolMisses = new long[ENTITY_NAMES.length];
+		allocatedBytes = -1;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+		}
+	}
+
+
+	/**
+	 * Makes the metrics available over JMX
+	 */
+	public void register () {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		}
+		catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * Returns the number of bytes the current thread has allocated so far,
+	 * or -1 if that can't be measured
+	 */
+	public long getThreadAllocatedBytes () {
+		return (threads == null) ? -1 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+
+	/**
+	 * Records the time in nanoseconds taken by one run of a phase
+	 */
+	public synchronized void recordPhase (int phase, long nanos) {
+		phases[phase].record(nanos);
+	}
+
+
+	/**
+	 * Records what the latest search for collisions found
+	 */
+	public synchronized void recordCollisions (int shared, int tested, int found) {
+		sharedCells = shared;
+		testedPairs = tested;
+		collisions = found;
+	}
+
+
+	/**
+	 * Records the number of participants of each type, the number of
+	 * particles and the bytes allocated after the latest tick
+	 */
+	public synchronized void recordTick (int[] typeCounts, int particles, long allocated) {
+		System.arraycopy(typeCounts, 0, entityCounts, 0, ParticipantStore.TYPE_COUNT);
+		entityCounts[ParticipantStore.TYPE_COUNT] = particles;
+		allocatedBytes = allocated;
+	}
+
+
+	/**
+	 * Records how many participants of the given type their pool has reused
+	 * and how many it has had to create so far
+	 */
+	public synchronized void recordPool (int type, long hits, long misses) {
+		poolHits[type] = hits;
+		poolMisses[type] = misses;
+	}
+
+
+	@Override
+	public String[] getPhaseNames () {
+		return PHASE_NAMES.clone();
+	}
+
+
+	@Override
+	public synchronized long[] getMedianMicros () {
+		return percentiles(50);
+	}
+
+
+	@Override
+	public synchronized long[] getPercentile99Micros () {
+		return percentiles(99);
+	}
+
+
+	@Override
+	public synchronized long[] getMaxMicros () {
+		long[] result = new long[PHASE_COUNT];
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			result[i] = phases[i].getMax();
+		}
+		return result;
+	}
+
+
+	@Override
+	public synchronized long[] getPhaseCounts () {
+		long[] result = new long[PHASE_COUNT];
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			result[i] = phases[i].getCount();
+		}
+		return result;
+	}
+
+
+	@Override
+	public synchronized int getSharedCells () {
+		return sharedCells;
+	}
+
+
+	@Override
+	public synchronized int getTestedPairs () {
+		return testedPairs;
+	}
+
+
+	@Override
+	public synchronized int getCollisions () {
+		return collisions;
+	}
+
+
+	@Override
+	public String[] getEntityNames () {
+		return ENTITY_NAMES.clone();
+	}
+
+
+	@Override
+	public synchronized int[] getEntityCounts () {
+		return entityCounts.clone();
+	}
+
+
+	@Override
+	public synchronized long getAllocatedBytes () {
+		return allocatedBytes;
+	}
+
+
+	@Override
+	public synchronized long[] getPoolHits () {
+		return poolHits.clone();
+	}
+
+
+	@Override
+	public synchronized long[] getPoolMisses () {
+		return poolMisses.clone();
+	}
+
+
+	@Override
+	public synchronized void reset () {
+		for (LatencyHistogram h: phases) {
+			h.clear();
+		}
+	}
+
+
+	/**
+	 * Returns a few lines of text that sum up the metrics
+	 */
+	public synchronized List<String> summarize () {
+		List<String> lines = new ArrayList<String>();
+		lines.add("phase          p50 us  p99 us  max us");
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			lines.add(String.format("%-14s%7d %7d %7d", PHASE_NAMES[i],
+				phases[i].getPercentile(50), phases[i].getPercentile(99), phases[i].getMax()));
+		}
+		lines.add(String.format("grid %d shared, %d tested, %d hits", sharedCells, testedPairs, collisions));
+		StringBuilder entities = new StringBuilder();
+		for (int i = 0; i < ENTITY_NAMES.length; i++) {
+			if (entityCounts[i] > 0) {
+				entities.append(ENTITY_NAMES[i]).append(' ').append(entityCounts[i]).append("  ");
+			}
+		}
+		lines.add(entities.toString().trim());
+		lines.add("allocated " + allocatedBytes + " bytes/tick");
+		for (int i = 0; i < ENTITY_NAMES.length; i++) {
+			if (poolHits[i] + poolMisses[i] > 0) {
+				lines.add(String.format("%-10s pool %7d reused %5d new", ENTITY_NAMES[i], poolHits[i], poolMisses[i]));
+			}
+		}
+		return lines;
+	}
+
+
+	/**
+	 * Returns the given percentile of each phase
+	 */
+	private long[] percentiles (double percent) {
+		long[] result = new long[PHASE_COUNT];
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			result[i] = phases[i].getPercentile(percent);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,87 @@
+package asteroids;
+
+/**
+ * The management interface through which the time spent in each phase of
+ * a tick, what the latest tick found and how well the participant pools
+ * are reusing participants can be watched from tools such as JConsole.
+ * Times are in microseconds, and arrays of times are indexed like the
+ * names returned by getPhaseNames.
+ */
+public interface TickMetricsMXBean {
+
+	/**
+	 * Returns the names of the phases
+	 */
+	public String[] getPhaseNames ();
+
+	/**
+	 * Returns the median time taken by each phase
+	 */
+	public long[] getMedianMicros ();
+
+	/**
+	 * Returns the 99th percentile of the time taken by each phase
+	 */
+	public long[] getPercentile99Micros ();
+
+	/**
+	 * Returns the longest time taken by each phase
+	 */
+	public long[] getMaxMicros ();
+
+	/**
+	 * Returns the number of times each phase has been timed
+	 */
+	public long[] getPhaseCounts ();
+
+	/**
+	 * Returns the number of times the latest tick found two participants
+	 * in the same cell of the collision grid
+	 */
+	public int getSharedCells ();
+
+	/**
+	 * Returns the number of pairs the latest tick tested for overlap
+	 */
+	public int getTestedPairs ();
+
+	/**
+	 * Returns the number of collisions found by the latest tick
+	 */
+	public int getCollisions ();
+
+	/**
+	 * Returns the names of the kinds of entities that are counted
+	 */
+	public String[] getEntityNames ();
+
+	/**
+	 * Returns the number of entities of each kind after the latest tick
+	 */
+	public int[] getEntityCounts ();
+
+	/**
+	 * Returns the number of bytes allocated by the latest tick, or -1 if
+	 * the virtual machine can't tell
+	 */
+	public long getAllocatedBytes ();
+
+	/**
+	 * Returns the number of participants of each kind that were reused
+	 * from their pool, indexed like the names returned by getEntityNames.
+	 * Kinds that have no pool are always 0.
+	 */
+	public long[] getPoolHits ();
+
+	/**
+	 * Returns the number of participants of each kind that their pool had
+	 * to create, indexed like getPoolHits.  Once games have warmed up this
+	 * only grows when one reaches more asteroids than any before it.
+	 */
+	public long[] getPoolMisses ();
+
+	/**
+	 * Forgets the times recorded so far
+	 */
+	public void reset ();
+}
@@ -0,0 +1,215 @@
+package asteroids;
+
+import static asteroids.Constants.*;
+
+/**
+ * Keeps track of timeouts that are measured in refreshes (ticks) of the
+ * game rather than in wall-clock time.  Timeouts are hashed by the tick on
+ * which they expire into a fixed ring of buckets, each of which is a doubly
+ * linked list, so scheduling and cancelling take constant time.  Each call
+ * to advance() moves the clock forward one tick and expires the timeouts
+ * that are due, in the order in which they were scheduled.
+ */
+class TimingWheel {
+
+	/**
+	 * Something that happens after a number of ticks.  A timeout can be
+	 * scheduled on at most one wheel at a time.
+	 */
+	public static abstract class Timeout {
+
+		// Neighbors in the list this timeout is on
+		private Timeout prev, next;
+
+		// The list this timeout is on, or -1 if it isn't scheduled
+		private int list = -1;
+
+		// Tick on which the timeout expires
+		private long deadline;
+
+		/**
+		 * Called when the timeout expires
+		 */
+		protected abstract void expire ();
+
+		/**
+		 * Reports whether the timeout is waiting to expire
+		 */
+		public boolean isScheduled () {
+			return list >= 0;
+		}
+
+		/**
+		 * Returns the tick on which the timeout expires, if it is scheduled
+		 */
+		public long getDeadline () {
+			return deadline;
+		}
+
+		/**
+		 * Returns the timeout after this one in its bucket, or null
+		 */
+		Timeout getNext () {
+			return next;
+		}
+	}
+
+	// Number of buckets; must be a power of two
+	private final static int BUCKETS = 256;
+
+	// First and last timeout in each bucket.  The extra list at the end holds
+	// the timeouts that are in the middle of expiring.
+	private Timeout[] heads, tails;
+
+	// The current tick
+	private long tick;
+
+
+	/**
+	 * Creates a wheel with nothing scheduled
+	 */
+	public TimingWheel () {
+		heads = new Timeout[BUCKETS + 1];
+		tails = new Timeout[BUCKETS + 1];
+		tick = 0;
+	}
+
+
+	/**
+	 * Returns the number of ticks that most closely covers the given number of
+	 * milliseconds of play.  This is always at least one.
+	 */
+	public static int ticksFor (int msecs) {
+		return Math.max(1, (msecs + FRAME_INTERVAL - 1) / FRAME_INTERVAL);
+	}
+
+
+	/**
+	 * Returns the current tick
+	 */
+	public long getTick () {
+		return tick;
+	}
+
+
+	/**
+	 * Returns the number of buckets.  Between ticks, every scheduled timeout
+	 * is in one of them.
+	 */
+	int getBucketCount () {
+		return BUCKETS;
+	}
+
+
+	/**
+	 * Returns the first timeout in a bucket, or null if it is empty.  The
+	 * rest follow by way of Timeout.getNext, in the order they will expire.
+	 */
+	Timeout getFirst (int bucket) {
+		return heads[bucket];
+	}
+
+
+	/**
+	 * Sets the current tick.  This must only be done while nothing is
+	 * scheduled.
+	 */
+	void setTick (long tick) {
+		this.tick = tick;
+	}
+
+
+	/**
+	 * Arranges for the timeout to expire on the given tick, after the
+	 * timeouts already scheduled for it.  This puts back a timeout found by
+	 * getFirst and getNext.
+	 */
+	void scheduleAt (Timeout t, long deadline) {
+		cancel(t);
+		t.deadline = deadline;
+		append(t, (int) (deadline & (BUCKETS - 1)));
+	}
+
+
+	/**
+	 * Arranges for the timeout to expire the given number of ticks from now.
+	 * (A delay of less than one tick is treated as one tick.)  If it is
+	 * already scheduled, it is rescheduled.
+	 */
+	public void schedule (Timeout t, int ticks) {
+		cancel(t);
+		t.deadline = tick + Math.max(1, ticks);
+		append(t, (int) (t.deadline & (BUCKETS - 1)));
+	}
+
+
+	/**
+	 * Cancels the timeout if it is scheduled
+	 */
+	public void cancel (Timeout t) {
+		if (t.list < 0) {
+			return;
+		}
+		if (t.prev == null) {
+			heads[t.list] = t.next;
+		}
+		else {
+			t.prev.next = t.next;
+		}
+		if (t.next == null) {
+			tails[t.list] = t.prev;
+		}
+		else {
+			t.next.prev = t.prev;
+		}
+		t.prev = null;
+		t.next = null;
+		t.list = -1;
+	}
+
+
+	/**
+	 * Advances the clock by one tick and expires the timeouts that are due.
+	 * Timeouts that are scheduled or cancelled by the expiring ones take
+	 * effect immediately.
+	 */
+	public void advance () {
+		tick++;
+
+		// Move the due timeouts out of their bucket first, so that expiring
+		// ones can safely schedule and cancel others
+		int bucket = (int) (tick & (BUCKETS - 1));
+		Timeout t = heads[bucket];
+		while (t != null) {
+			Timeout next = t.next;
+			if (t.deadline == tick) {
+				cancel(t);
+				append(t, BUCKETS);
+			}
+			t = next;
+		}
+
+		while (heads[BUCKETS] != null) {
+			t = heads[BUCKETS];
+			cancel(t);
+			t.expire();
+		}
+	}
+
+
+	/**
+	 * Adds the timeout to the end of a list
+	 */
+	private void append (Timeout t, int list) {
+		t.list = list;
+		t.prev = tails[list];
+		t.next = null;
+		if (tails[list] == null) {
+			heads[list] = t;
+		}
+		else {
+			tails[list].next = t;
+		}
+		tails[list] = t;
+	}
+}
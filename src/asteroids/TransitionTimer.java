@@ -1,8 +1,5 @@
 package asteroids;
 
-import javax.swing.*;
-import java.awt.event.*;
-
 
 /**
  * For timing transitions between states (splash screen, next screen,
@@ -13,7 +10,7 @@ import java.awt.event.*;
  * is out of date.
  * @author Joe Zachary
  */
-public class TransitionTimer implements ActionListener {
+public class TransitionTimer extends TimingWheel.Timeout {
 
 	// Transition count when this object was created
 	private int transitionCount;
@@ -21,26 +18,61 @@ public class TransitionTimer implements ActionListener {
 	// Controller that contains callback method
 	private Controller controller;
 	
-	// Underlying timer
-	private Timer timer;
+	// The world whose play is timed
+	private World world;
 	
 	/**
-	 * Creates a TransitionTimer.
+	 * Creates a TransitionTimer that goes off after the given number of
+	 * milliseconds of play in the world.
 	 */
-	public TransitionTimer (int msecs, int transitionCount, Controller controller) {
-		this.transitionCount = transitionCount;
+	public TransitionTimer (World world, int msecs, int transitionCount, Controller controller) {
+		this.world = world;
+		this.controller = controller;
+		restart(msecs, transitionCount);
+	}
+	
+	
+	/**
+	 * Creates a TransitionTimer for the controller that isn't counting down
+	 * yet
+	 */
+	TransitionTimer (World world, Controller controller) {
+		this.world = world;
 		this.controller = controller;
-		timer = new Timer(msecs, this);
-		timer.addActionListener(this);
-		timer.start();
+	}
+	
+	
+	/**
+	 * Starts the timer over, as though it had just been constructed with the
+	 * given number of milliseconds and transition count
+	 */
+	public void restart (int msecs, int transitionCount) {
+		this.transitionCount = transitionCount;
+		world.getTimingWheel().schedule(this, TimingWheel.ticksFor(msecs));
+	}
+
+	/**
+	 * Returns the transition count the timer was started with
+	 */
+	int getTransitionCount () {
+		return transitionCount;
+	}
+	
+	
+	/**
+	 * Sets the timer to go off on the given tick for the given transition
+	 * count, as found by getDeadline and getTransitionCount
+	 */
+	void restore (int transitionCount, long deadline) {
+		this.transitionCount = transitionCount;
+		world.getTimingWheel().scheduleAt(this, deadline);
 	}
 
 	/**
 	 * Makes a callback as long as the transition count hasn't changed.
 	 */
 	@Override
-	public void actionPerformed (ActionEvent e) {
-		timer.stop();
+	protected void expire () {
 		if (controller.getTransitionCount() == transitionCount) {
 			controller.performTransition();
 		}
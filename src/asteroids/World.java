@@ -0,0 +1,731 @@
+package asteroids;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import static asteroids.Constants.*;
+
+/**
+ * The state of a game of asteroids: the participants, the particles, the
+ * timeouts that are pending and the legend.  Each call to refresh advances
+ * the world by one tick: timeouts expire, pending adds and removes are
+ * made, the participants and particles move, and the collisions between
+ * participants are reported to the listeners in one batch.  The
+ * world has nothing to do with the display, so it can be run without one.
+ * When a Screen is showing the world, each refresh also publishes a frame
+ * for the screen to draw.  When metrics are kept, or a flight recording
+ * is taking tick events, the time taken by each phase of a refresh is
+ * recorded; expiring timeouts count as part of adding and removing
+ * participants.
+ */
+public class World {
+	
+	// Threads shared by every world for moving participants and testing them
+	// for collisions in parallel
+	private final static ForkJoinPool workers = new ForkJoinPool();
+	
+	// The participants (asteroids, bullets, ships, etc.) that are
+	// involved in the game, along with their motion state.
+	private ParticipantStore participants;
+	
+	// Objects interested in learning about collisions between 
+	// pairs of participants
+	private ArrayList<CollisionListener> listeners;
+	
+	// Participants that will be added to/removed from the game at the next
+	// refresh.  These keep the order in which the requests were made so that
+	// games play out the same way every time.
+	private ParticipantSet pendingAdds;
+	private ParticipantSet pendingRemoves;
+	
+	// Effects that drift across the screen without colliding with anything
+	private ParticleSystem particles;
+	
+	// Legend that is displayed across the screen
+	private String legend;
+	
+	// Broadphase used to find participants that might be colliding
+	private SpatialGrid grid;
+	
+	// The collisions found by the latest refresh
+	private CollisionBatch collisions;
+	
+	// For each pair found by the grid, whether it overlaps.  Only used when
+	// the pairs are tested in parallel.
+	private boolean[] hits;
+	
+	// Number of participants at or above which work is done in parallel
+	private int parallelThreshold;
+	
+	// The loops that move participants and particles
+	private Kinematics kinematics;
+	
+	// Where the time taken by each phase of a refresh is recorded, or null
+	private TickMetrics metrics;
+	
+	// Whether the phases of the current refresh are being timed, when the
+	// current phase began and how long each phase took
+	private boolean timing;
+	private long phaseStart;
+	private long[] phaseNanos;
+	
+	// The bytes the thread had allocated when the current refresh began
+	// (only kept when there are metrics)
+	private long tickAllocated;
+	
+	// Number of participants of each type, counted for the metrics
+	private int[] typeCounts;
+	
+	// Timeouts (such as the lifetimes of bullets and debris) that expire
+	// after some number of refreshes
+	private TimingWheel timingWheel;
+	
+	// Whether frames are published at the end of each refresh
+	private volatile boolean publishing;
+	
+	// The two most recently published frames and the frame being built by
+	// the next refresh.  The published frames are guarded by frameLock.
+	private Frame latest, previous, building;
+	private Object frameLock;
+	
+	
+	/**
+	 * Creates an empty world that doesn't publish frames
+	 */
+	public World () {
+		participants = new ParticipantStore();
+		listeners = new ArrayList<CollisionListener>();
+		pendingAdds = new ParticipantSet(1);
+		pendingRemoves = new ParticipantSet(2);
+		particles = new ParticleSystem();
+		legend = "";
+		grid = new SpatialGrid(COLLISION_CELL_SIZE);
+		collisions = new CollisionBatch(pendingRemoves);
+		hits = new boolean[16];
+		parallelThreshold = PARALLEL_THRESHOLD;
+		kinematics = Kinematics.preferred();
+		metrics = null;
+		timing = false;
+		phaseNanos = new long[TickMetrics.PHASE_COUNT];
+		typeCounts = new int[ParticipantStore.TYPE_COUNT];
+		timingWheel = new TimingWheel();
+		publishing = false;
+		latest = new Frame();
+		previous = new Frame();
+		building = new Frame();
+		frameLock = new Object();
+	}
+	
+	
+	/**
+	 * Add a participant to the game
+	 */
+	public void addParticipant (Participant p) {
+		pendingAdds.add(p);
+	}
+	
+
+	/**
+	 * Returns the particles, which are added to directly and disappear by
+	 * themselves
+	 */
+	ParticleSystem getParticles () {
+		return particles;
+	}
+	
+
+	/**
+	 * Remove a participant from the game.  Removing null (or a participant
+	 * that isn't in the game) does nothing.
+	 */
+	public void removeParticipant(Participant p) {
+		if (p != null) {
+			pendingRemoves.add(p);
+		}
+	}
+	
+	
+	/**
+	 * Returns the timing wheel that is advanced with each refresh
+	 */
+	public TimingWheel getTimingWheel () {
+		return timingWheel;
+	}
+	
+	
+	/**
+	 * Set the legend
+	 */
+	public void setLegend (String legend) {
+		this.legend = legend;
+	}
+	
+	
+	/**
+	 * Returns the legend
+	 */
+	public String getLegend () {
+		return legend;
+	}
+	
+	
+	/**
+	 * Returns the number of participants in the world
+	 */
+	public int getParticipantCount () {
+		return participants.size();
+	}
+	
+	
+	/**
+	 * Returns a number made from the type, position, speed and rotation of
+	 * every participant.  Games that have played out the same way have the
+	 * same checksum.  This must only be called from the simulation thread.
+	 */
+	public long getChecksum () {
+		long sum = participants.size();
+		for (int i = 0; i < participants.size(); i++) {
+			sum = 31*sum + participants.type[i];
+			sum = 31*sum + Double.doubleToLongBits(participants.x[i]);
+			sum = 31*sum + Double.doubleToLongBits(participants.y[i]);
+			sum = 31*sum + Double.doubleToLongBits(participants.speedX[i]);
+			sum = 31*sum + Double.doubleToLongBits(participants.speedY[i]);
+			sum = 31*sum + Double.doubleToLongBits(participants.rotation[i]);
+		}
+		return sum;
+	}
+	
+	
+	/**
+	 * Turns the publishing of frames at the end of each refresh on or off
+	 */
+	public void setPublishing (boolean publishing) {
+		this.publishing = publishing;
+	}
+	
+	
+	/**
+	 * Returns when the latest frame was published, as given by
+	 * System.nanoTime.  This can be called from any thread.
+	 */
+	public long getFrameTime () {
+		synchronized (frameLock) {
+			return latest.time;
+		}
+	}
+	
+	
+	/**
+	 * Copies the two most recently published frames into latest and previous.
+	 * This can be called from any thread.
+	 */
+	public void copyFrames (Frame latest, Frame previous) {
+		synchronized (frameLock) {
+			latest.copyFrom(this.latest);
+			previous.copyFrom(this.previous);
+		}
+	}
+	
+		
+	/**
+	 * Clear the world so that nothing is displayed
+	 */
+	public void clear () {
+		pendingRemoves.clear();
+		pendingAdds.clear();
+		Participant[] ps = participants.getOwners();
+		while (participants.size() > 0) {
+			Participant p = ps[participants.size()-1];
+			p.detach();
+			p.recycle();
+		}
+		particles.clear();
+		legend = "";
+	}
+	
+	
+	/**
+	 * Adds every participant in the world, and every one waiting to be added
+	 * or removed, to the table
+	 */
+	void addParticipantsTo (ParticipantTable table) {
+		Participant[] ps = participants.getOwners();
+		for (int i = 0; i < participants.size(); i++) {
+			table.add(ps[i]);
+		}
+		for (int i = 0; i < pendingAdds.size(); i++) {
+			table.add(pendingAdds.get(i));
+		}
+		for (int i = 0; i < pendingRemoves.size(); i++) {
+			table.add(pendingRemoves.get(i));
+		}
+	}
+	
+	
+	/**
+	 * Writes the state of the world between ticks: the legend, the tick
+	 * the timing wheel is on, the participants in storage order, those
+	 * waiting to be added and removed (as their numbers in the table) and
+	 * the particles (whose outlines must be among those given).  The
+	 * timeouts are left to whoever scheduled them.
+	 */
+	void writeState (DataOutput out, ParticipantTable table, Shape[] outlines) throws IOException {
+		out.writeInt(legend.length());
+		out.writeChars(legend);
+		out.writeLong(timingWheel.getTick());
+		Participant[] ps = participants.getOwners();
+		out.writeInt(participants.size());
+		for (int i = 0; i < participants.size(); i++) {
+			out.writeInt(table.idOf(ps[i]));
+		}
+		out.writeInt(pendingAdds.size());
+		for (int i = 0; i < pendingAdds.size(); i++) {
+			out.writeInt(table.idOf(pendingAdds.get(i)));
+		}
+		out.writeInt(pendingRemoves.size());
+		for (int i = 0; i < pendingRemoves.size(); i++) {
+			out.writeInt(table.idOf(pendingRemoves.get(i)));
+		}
+		particles.writeState(out, outlines);
+	}
+	
+	
+	/**
+	 * Replaces the state of the world with what writeState wrote.  Whatever
+	 * was in the world is cleared away, and the timing wheel starts out
+	 * empty on the recorded tick.
+	 */
+	void readState (ByteBuffer in, ParticipantTable table, Shape[] outlines) {
+		clear();
+		char[] chars = new char[in.getInt()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = in.getChar();
+		}
+		legend = new String(chars);
+		timingWheel = new TimingWheel();
+		timingWheel.setTick(in.getLong());
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			table.get(in.getInt()).attach(participants);
+		}
+		count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			pendingAdds.add(table.get(in.getInt()));
+		}
+		count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			pendingRemoves.add(table.get(in.getInt()));
+		}
+		particles.readState(in, outlines);
+	}
+	
+	
+	/**
+	 * Reports whether the listener is being told about collisions
+	 */
+	boolean hasCollisionListener (CollisionListener listener) {
+		return listeners.contains(listener);
+	}
+	
+	
+	/**
+	 * Records a new listener
+	 */
+	public void addCollisionListener (CollisionListener listener) {
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+	
+	
+	/**
+	 * Removes an existing listener.
+	 */
+	public void removeCollisionListener (CollisionListener listener) {
+		listeners.remove(listener);
+	}
+	
+	
+	/**
+	 * Arranges for the time taken by each phase of a refresh, and what it
+	 * found, to be recorded in the metrics.  Passing null stops recording.
+	 */
+	void setMetrics (TickMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	
+	/**
+	 * Sets the number of participants at or above which participants are
+	 * moved and tested for collisions in parallel.  The outcome is the same
+	 * either way; only the speed differs.
+	 */
+	void setParallelThreshold (int threshold) {
+		parallelThreshold = threshold;
+	}
+	
+	
+	/**
+	 * Sets the loops that move participants and particles.  The outcome is
+	 * the same whichever are used; only the speed differs.
+	 */
+	void setKinematics (Kinematics kinematics) {
+		this.kinematics = kinematics;
+		particles.setKinematics(kinematics);
+	}
+	
+	
+	/**
+	 * Finds each pair of overlapping participants and hands them all to each
+	 * listener in turn.  The spatial grid narrows the search down to
+	 * participants that are near one another, and the pairs are recorded in
+	 * the order the original scan of every pair found them: each participant
+	 * in storage order is compared against the participants after it in
+	 * reverse order.  The batch skips pairs that the original scan would have
+	 * stopped short of once participants are removed.
+	 */
+	void checkForCollisions () {
+		GameEvents.Collisions event = null;
+		if (GameEvents.COLLISIONS.isEnabled()) {
+			event = new GameEvents.Collisions();
+			event.begin();
+		}
+		
+		int n = participants.size();
+		Participant[] collisionOrder = participants.getOwners();
+		grid.build(collisionOrder, n, participants.layer, participants.mask);
+		
+		collisions.clear(collisionOrder, n);
+		int pairs = grid.getPairCount();
+		if (n >= parallelThreshold) {
+			
+			// Test the pairs in parallel, then record the hits in pair order
+			// so that the batch is the same as the sequential one
+			if (hits.length < pairs) {
+				hits = new boolean[Math.max(pairs, 2 * hits.length)];
+			}
+			workers.invoke(new PrepareTask(collisionOrder, 0, n));
+			workers.invoke(new PairTask(collisionOrder, grid, hits, 0, pairs));
+			for (int k = 0; k < pairs; k++) {
+				if (hits[k]) {
+					collisions.add(grid.getFirst(k), grid.getSecond(k));
+				}
+			}
+		}
+		else {
+			for (int k = 0; k < pairs; k++) {
+				int i = grid.getFirst(k);
+				int j = grid.getSecond(k);
+				if (collisionOrder[i].overlaps(collisionOrder[j])) {
+					collisions.add(i, j);
+				}
+			}
+		}
+		
+		if (metrics != null) {
+			metrics.recordCollisions(grid.getSharedCount(), pairs, collisions.size());
+		}
+		endPhase(TickMetrics.COLLISIONS);
+		
+		if (collisions.size() > 0) {
+			for (int i = 0; i < listeners.size(); i++) {
+				collisions.rewind();
+				listeners.get(i).collisionsDetected(collisions);
+			}
+		}
+		endPhase(TickMetrics.DISPATCH);
+		
+		if (event != null) {
+			event.participants = n;
+			event.sharedCells = grid.getSharedCount();
+			event.testedPairs = pairs;
+			event.collisions = collisions.size();
+			event.commit();
+		}
+	}
+	
+	
+	/**
+	 * Completes any adds and removes that have been requested.  
+	 */
+	private void completeAddsAndRemoves () {
+		
+		// Note: These updates are saved up done later to avoid modiying
+		// the participants while they are being iterated over.  A participant
+		// that is both added and removed ends up where it started.
+		for (int i = 0; i < pendingRemoves.size(); i++) {
+			Participant p = pendingRemoves.get(i);
+			if (p.isAttachedTo(participants) && !pendingAdds.contains(p)) {
+				p.detach();
+				p.recycle();
+			}
+		}
+		for (int i = 0; i < pendingAdds.size(); i++) {
+			Participant p = pendingAdds.get(i);
+			if (!p.isAttachedTo(participants) && !pendingRemoves.contains(p)) {
+				p.attach(participants);
+			}
+		}
+		pendingAdds.clear();
+		pendingRemoves.clear();
+	}
+	
+	
+	/**
+	 * Advances the world by one tick.  This is what drives the animation.
+	 */
+	public void refresh () {
+		GameEvents.Tick event = null;
+		if (GameEvents.TICK.isEnabled()) {
+			event = new GameEvents.Tick();
+			event.begin();
+		}
+		timing = metrics != null || event != null;
+		if (metrics != null) {
+			tickAllocated = metrics.getThreadAllocatedBytes();
+		}
+		if (timing) {
+			Arrays.fill(phaseNanos, 0);
+			phaseStart = System.nanoTime();
+		}
+		timingWheel.advance();
+		completeAddsAndRemoves();
+		endPhase(TickMetrics.ADDS_AND_REMOVES);
+		
+		moveParticipants();
+		endPhase(TickMetrics.MOVE);
+		particles.advance();
+		endPhase(TickMetrics.PARTICLES);
+		checkForCollisions();
+		if (publishing) {
+			publishFrame();
+			endPhase(TickMetrics.PUBLISH);
+		}
+		
+		if (metrics != null) {
+			Arrays.fill(typeCounts, 0);
+			for (int i = 0; i < participants.size(); i++) {
+				typeCounts[participants.type[i]]++;
+			}
+			long allocated = metrics.getThreadAllocatedBytes();
+			metrics.recordTick(typeCounts, particles.size(), (allocated < 0) ? -1 : allocated - tickAllocated);
+		}
+		if (event != null) {
+			event.participants = participants.size();
+			event.particles = particles.size();
+			event.addsAndRemoves = phaseNanos[TickMetrics.ADDS_AND_REMOVES];
+			event.move = phaseNanos[TickMetrics.MOVE];
+			event.advance = phaseNanos[TickMetrics.PARTICLES];
+			event.collisions = phaseNanos[TickMetrics.COLLISIONS];
+			event.dispatch = phaseNanos[TickMetrics.DISPATCH];
+			event.publish = phaseNanos[TickMetrics.PUBLISH];
+			event.commit();
+		}
+	}
+	
+	
+	/**
+	 * Moves every participant by one tick.  Each move only changes its own
+	 * participant, so when there are enough of them they are moved in
+	 * parallel.
+	 */
+	void moveParticipants () {
+		int n = participants.size();
+		if (n >= parallelThreshold) {
+			workers.invoke(new MoveTask(this, 0, n));
+		}
+		else {
+			moveParticipants(0, n);
+		}
+	}
+	
+	
+	/**
+	 * Moves the participants from start up to end just as their move methods
+	 * would.  Positions are advanced and wrapped around the screen, and
+	 * speeds slowed by friction, a whole array at a time by the kinematics
+	 * loops.  Only placing each participant's outline is done one at a time.
+	 */
+	private void moveParticipants (int start, int end) {
+		ParticipantStore s = participants;
+		Participant[] ps = s.getOwners();
+		kinematics.advance(s.x, s.speedX, s.nextX, start, end);
+		kinematics.advance(s.y, s.speedY, s.nextY, start, end);
+		for (int i = start; i < end; i++) {
+			Participant p = ps[i];
+			p.place(s.nextX[i], s.nextY[i]);
+			Rectangle2D bounds = p.getBounds();
+			s.minX[i] = bounds.getMinX();
+			s.minY[i] = bounds.getMinY();
+			s.maxX[i] = bounds.getMaxX();
+			s.maxY[i] = bounds.getMaxY();
+		}
+		kinematics.wrap(s.nextX, s.minX, s.maxX, s.x, start, end);
+		kinematics.wrap(s.nextY, s.minY, s.maxY, s.y, start, end);
+		kinematics.friction(s.speedX, s.speedY, s.friction, start, end);
+	}
+	
+	
+	/**
+	 * Records the time since the previous phase ended as the time taken by
+	 * the given phase, if the phases are being timed
+	 */
+	private void endPhase (int phase) {
+		if (timing) {
+			long now = System.nanoTime();
+			phaseNanos[phase] = now - phaseStart;
+			if (metrics != null) {
+				metrics.recordPhase(phase, phaseNanos[phase]);
+			}
+			phaseStart = now;
+		}
+	}
+	
+	
+	/**
+	 * Records what the participants and legend look like after this refresh
+	 * and makes that the latest frame.
+	 */
+	private void publishFrame () {
+		building.clear();
+		Participant[] ps = participants.getOwners();
+		for (int i = 0; i < participants.size(); i++) {
+			Participant p = ps[i];
+			building.add(p.getHandle(), p.getType(), p.getOutline(), p.getCollisionShape(),
+				p.getBorderX(), p.getBorderY(), p.getBorderRotation());
+		}
+		particles.publish(building);
+		building.legend = legend;
+		building.time = System.nanoTime();
+		synchronized (frameLock) {
+			Frame oldest = previous;
+			previous = latest;
+			latest = building;
+			building = oldest;
+		}
+	}
+	
+	
+	/**
+	 * Work on a range of participants or pairs that splits itself in half
+	 * until the pieces are small enough to do directly
+	 */
+	private abstract static class RangeTask extends RecursiveAction {
+		private final static long serialVersionUID = 1L;
+		
+		// The range, from start up to but not including end
+		protected int start, end;
+		
+		public RangeTask (int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute () {
+			if (end - start <= PARALLEL_CHUNK) {
+				computeDirectly();
+			}
+			else {
+				int middle = (start + end) >>> 1;
+				invokeAll(split(start, middle), split(middle, end));
+			}
+		}
+		
+		/**
+		 * Does the work for the whole range
+		 */
+		protected abstract void computeDirectly ();
+		
+		/**
+		 * Returns a task for part of the range
+		 */
+		protected abstract RangeTask split (int from, int to);
+	}
+	
+	
+	/**
+	 * Moves a range of participants
+	 */
+	private static class MoveTask extends RangeTask {
+		private final static long serialVersionUID = 1L;
+		private World world;
+		
+		public MoveTask (World world, int start, int end) {
+			super(start, end);
+			this.world = world;
+		}
+		
+		@Override
+		protected void computeDirectly () {
+			world.moveParticipants(start, end);
+		}
+		
+		@Override
+		protected RangeTask split (int from, int to) {
+			return new MoveTask(world, from, to);
+		}
+	}
+	
+	
+	/**
+	 * Readies a range of participants to be tested for collisions from
+	 * several threads
+	 */
+	private static class PrepareTask extends RangeTask {
+		private final static long serialVersionUID = 1L;
+		private Participant[] ps;
+		
+		public PrepareTask (Participant[] ps, int start, int end) {
+			super(start, end);
+			this.ps = ps;
+		}
+		
+		@Override
+		protected void computeDirectly () {
+			for (int i = start; i < end; i++) {
+				ps[i].prepareForCollisions();
+			}
+		}
+		
+		@Override
+		protected RangeTask split (int from, int to) {
+			return new PrepareTask(ps, from, to);
+		}
+	}
+	
+	
+	/**
+	 * Tests a range of the grid's pairs for overlap and records the results
+	 */
+	private static class PairTask extends RangeTask {
+		private final static long serialVersionUID = 1L;
+		private Participant[] ps;
+		private SpatialGrid grid;
+		private boolean[] hits;
+		
+		public PairTask (Participant[] ps, SpatialGrid grid, boolean[] hits, int start, int end) {
+			super(start, end);
+			this.ps = ps;
+			this.grid = grid;
+			this.hits = hits;
+		}
+		
+		@Override
+		protected void computeDirectly () {
+			for (int k = start; k < end; k++) {
+				hits[k] = ps[grid.getFirst(k)].overlaps(ps[grid.getSecond(k)]);
+			}
+		}
+		
+		@Override
+		protected RangeTask split (int from, int to) {
+			return new PairTask(ps, grid, hits, from, to);
+		}
+	}
+}
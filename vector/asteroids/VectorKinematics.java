@@ -0,0 +1,141 @@
+package asteroids;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import static asteroids.Constants.*;
+
+/**
+ * The loops of Kinematics written with the vector API, which does the
+ * arithmetic for as many elements at once as the processor's widest vectors
+ * hold.  Branches become masks that pick between the results of both sides.
+ * Every operation is the same IEEE operation the plain loops do, in the same
+ * order, so the results are identical.  The elements left over at the end
+ * of each range, and ranges too short to gain anything, are done by the
+ * plain loops.
+ * <p>
+ * This needs the jdk.incubator.vector module both to compile and to run:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin vector/asteroids/*.java
+ * java --add-modules jdk.incubator.vector -cp bin asteroids.Game
+ * </pre>
+ * Kinematics only loads it when the module is present.
+ */
+class VectorKinematics extends Kinematics {
+
+	// The shapes of the vectors used
+	private final static VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private final static VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	// Shortest range that is worth doing with vectors.  A running game's
+	// arrays are mostly shorter than this, and on those the vector loops
+	// made the game slower rather than faster, so they are left to the
+	// plain loops; bursts of particles and big worlds are not.
+	private final static int MIN_LENGTH = 64;
+
+
+	@Override
+	public String getName () {
+		return "vector (" + DOUBLES.length() + " doubles)";
+	}
+
+
+	/**
+	 * Returns where the part of the range from start to end that is done
+	 * with vectors of the given shape ends.  This is start if the range is
+	 * too short to be worth it.
+	 */
+	private static int vectorEnd (VectorSpecies<?> species, int start, int end) {
+		return (end - start < MIN_LENGTH) ? start : start + species.loopBound(end - start);
+	}
+
+
+	@Override
+	public void countDown (int[] ticks, int start, int end) {
+		int i = start;
+		for (int bound = vectorEnd(INTS, start, end); i < bound; i += INTS.length()) {
+			IntVector.fromArray(INTS, ticks, i).sub(1).intoArray(ticks, i);
+		}
+		super.countDown(ticks, i, end);
+	}
+
+
+	@Override
+	public void drift (double[] pos, double[] speed, double[] drawn, double[] previous,
+					   double[] low, double[] high, int start, int end) {
+		DoubleVector zero = DoubleVector.zero(DOUBLES);
+		int i = start;
+		for (int bound = vectorEnd(DOUBLES, start, end); i < bound; i += DOUBLES.length()) {
+			DoubleVector p = DoubleVector.fromArray(DOUBLES, pos, i).add(DoubleVector.fromArray(DOUBLES, speed, i));
+			DoubleVector.fromArray(DOUBLES, drawn, i).intoArray(previous, i);
+			p.intoArray(drawn, i);
+
+			DoubleVector lo = DoubleVector.fromArray(DOUBLES, low, i);
+			DoubleVector hi = DoubleVector.fromArray(DOUBLES, high, i);
+			DoubleVector extent = hi.sub(lo);
+			DoubleVector under = zero.blend(extent.add(SIZE), p.add(hi).compare(VectorOperators.LT, 0));
+			DoubleVector over = zero.blend(DoubleVector.broadcast(DOUBLES, -SIZE).sub(extent),
+				p.add(lo).compare(VectorOperators.GE, SIZE));
+			p.add(under).add(over).intoArray(pos, i);
+		}
+		super.drift(pos, speed, drawn, previous, low, high, i, end);
+	}
+
+
+	@Override
+	public void advance (double[] pos, double[] speed, double[] next, int start, int end) {
+		int i = start;
+		for (int bound = vectorEnd(DOUBLES, start, end); i < bound; i += DOUBLES.length()) {
+			DoubleVector.fromArray(DOUBLES, pos, i).add(DoubleVector.fromArray(DOUBLES, speed, i)).intoArray(next, i);
+		}
+		super.advance(pos, speed, next, i, end);
+	}
+
+
+	@Override
+	public void wrap (double[] next, double[] min, double[] max, double[] pos, int start, int end) {
+		int i = start;
+		for (int bound = vectorEnd(DOUBLES, start, end); i < bound; i += DOUBLES.length()) {
+			DoubleVector p = DoubleVector.fromArray(DOUBLES, next, i);
+			DoubleVector lo = DoubleVector.fromArray(DOUBLES, min, i);
+			DoubleVector hi = DoubleVector.fromArray(DOUBLES, max, i);
+			DoubleVector extent = hi.sub(lo);
+			VectorMask<Double> under = hi.compare(VectorOperators.LT, 0);
+			VectorMask<Double> over = lo.compare(VectorOperators.GE, SIZE);
+			p.blend(p.add(extent.add(SIZE)), under)
+				.blend(p.add(DoubleVector.broadcast(DOUBLES, -SIZE).sub(extent)), over)
+				.intoArray(pos, i);
+		}
+		super.wrap(next, min, max, pos, i, end);
+	}
+
+
+	@Override
+	public void friction (double[] speedX, double[] speedY, double[] friction, int start, int end) {
+		DoubleVector zero = DoubleVector.zero(DOUBLES);
+		int i = start;
+		for (int bound = vectorEnd(DOUBLES, start, end); i < bound; i += DOUBLES.length()) {
+			DoubleVector sx = DoubleVector.fromArray(DOUBLES, speedX, i);
+			DoubleVector sy = DoubleVector.fromArray(DOUBLES, speedY, i);
+			DoubleVector f = DoubleVector.fromArray(DOUBLES, friction, i);
+			VectorMask<Double> slowed = f.compare(VectorOperators.NE, 0)
+				.and(sx.compare(VectorOperators.NE, 0).or(sy.compare(VectorOperators.NE, 0)));
+			if (!slowed.anyTrue()) {
+				continue;
+			}
+
+			// Lanes that aren't slowed divide by a speed of zero, but their
+			// results are never used
+			DoubleVector speed = sx.mul(sx).add(sy.mul(sy)).sqrt();
+			DoubleVector dx = f.mul(sx).div(speed);
+			DoubleVector dy = f.mul(sy).div(speed);
+			VectorMask<Double> stopped = dx.abs().compare(VectorOperators.GT, sx.abs())
+				.or(dy.abs().compare(VectorOperators.GT, sy.abs()));
+			sx.blend(sx.add(dx).blend(zero, stopped), slowed).intoArray(speedX, i);
+			sy.blend(sy.add(dy).blend(zero, stopped), slowed).intoArray(speedY, i);
+		}
+		super.friction(speedX, speedY, friction, i, end);
+	}
+}